@@ -0,0 +1,528 @@
+package ida.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Class representing a particular position of a width x height sliding tile
+ * puzzle, by default the 24 puzzle.
+ */
+public final class Board implements Serializable {
+
+	private static final long serialVersionUID = -2465383919318806094L;
+
+	public static final int NSQRT = 5; // the 24 puzzle is 5 x 5
+
+	// tiles are stored in bytes
+	static final int MAX_SIZE = Byte.MAX_VALUE + 1;
+
+	// property of the sliding tile puzzle
+	static final int BRANCH_FACTOR = 4;
+
+	// directions the blank can move in, as stored in a move stack
+	static final byte LEFT = 0;
+
+	static final byte RIGHT = 1;
+
+	static final byte UP = 2;
+
+	static final byte DOWN = 3;
+
+	// no move made yet, see lastMove()
+	static final byte NONE = -1;
+
+	private static final char[] MOVE_NAMES = { 'L', 'R', 'U', 'D' };
+
+	/**
+	 * array with one element for each position on the board. element (x,y) on
+	 * the board is (width * y) + x in this array ideally this would be
+	 * byte[height][width], but this makes creating a new board with the copy
+	 * constructor (which we do _a_lot_) too expensive.
+	 */
+	private byte[] board;
+
+	private int width, height;
+
+	// goal positions and move tables, shared by all boards of this size
+	private transient Tables tables;
+
+	private int distance;
+
+	private int bound;
+
+	// square of the blank, (width * y) + x
+	private int blank;
+
+	// direction of the move which created this board, or NONE
+	private byte previous;
+
+	private int depth;
+
+	/**
+	 * create a 24 puzzle board by deterministically shuffling the puzzle a
+	 * given number of times.
+	 */
+	public Board(int length) {
+		this(NSQRT, NSQRT, length);
+	}
+
+	/**
+	 * create a board of the given size by deterministically shuffling the
+	 * puzzle a given number of times.
+	 */
+	public Board(int width, int height, int length) {
+		setSize(width, height);
+		board = new byte[width * height];
+
+		// Generate a starting position by shuffling the blanc around
+		// in cycles. Just cycling along the outer bounds of the
+		// board yields low quality start positions whose solutions
+		// require less than 'length' steps. Therefore we use two
+		// alternating cycling dimensions.
+
+		// start with "solution"
+		for (int i = 0; i < board.length; i++) {
+			board[i] = (byte) i;
+		}
+		blank = 0;
+
+		// size of cycle. alternates between width x height and
+		// (width - 1) x (height - 1)
+		int nx = width - 1;
+		int ny = height - 1;
+
+		for (int i = 0; i < length; i++) {
+			int blankX = blank % width;
+			int blankY = blank / width;
+
+			if (blankX == 0 && blankY == 0) {
+				// at starting position, change cycle dimension
+				if (nx == width) {
+					nx = width - 1;
+					ny = height - 1;
+				} else {
+					nx = width;
+					ny = height;
+				}
+			}
+
+			if (blankX == 0 && blankY < ny - 1) { // going down
+				move(DOWN);
+			} else if (blankY == ny - 1 && blankX < nx - 1) { // going to the
+				// right
+				move(RIGHT);
+			} else if (blankX == nx - 1 && blankY > 0) { // going up
+				move(UP);
+			} else if (blankY == 0 && blankX > 0) { // going left
+				move(LEFT);
+			} else {
+				throw new Error("not going in any direction");
+			}
+		}
+
+		// reset values changed by calls to move()
+		bound = 0;
+		previous = NONE;
+		depth = 0;
+		distance = calculateBoardDistance();
+	}
+
+	/**
+	 * Create a new board. Read initial board position form a file. File should
+	 * contain one token per position, denoting the value of each position
+	 * as a decimal number or ".." for the blank, or be a binary board file
+	 * (see BoardReader).
+	 * 
+	 * @throws Exception
+	 * @throws IOException
+	 */
+	public Board(String fileName) throws Exception {
+		this(fileName, NSQRT, NSQRT);
+	}
+
+	/**
+	 * Create a new board of the given size. Read initial board position from
+	 * a file, as in Board(fileName).
+	 */
+	public Board(String fileName, int width, int height) throws Exception {
+		this(readFirstBoard(fileName, width, height), width, height, fileName);
+	}
+
+	/**
+	 * Create a new board from the tiles at each position, as read from the
+	 * given file. Checks that the tiles form a valid board.
+	 */
+	Board(byte[] tiles, int width, int height, String fileName) throws Exception {
+		setSize(width, height);
+		board = new byte[width * height];
+		bound = 0;
+		previous = NONE;
+		depth = 0;
+		blank = -1;
+
+		for (int i = 0; i < board.length; i++) {
+			int position = tiles[i];
+			if (position < 0 || position >= board.length) {
+				throw new Exception(String.format("Invalid tile \"%d\" in file \"%s\"", position, fileName));
+			}
+			if (position == 0) {
+				if (blank != -1) {
+					throw new Exception(String.format("Multiple blank tiles in file \"%s\"", fileName));
+				}
+				blank = i;
+			}
+			board[i] = (byte) position;
+		}
+		if (blank == -1) {
+			throw new Exception(String.format("No blank tile in file \"%s\"", fileName));
+		}
+		byte[] boardClone = new byte[board.length];
+		System.arraycopy(board, 0, boardClone, 0, board.length);
+		Arrays.sort(boardClone);
+		for (int i = 0; i < boardClone.length; ++i) {
+			if (boardClone[i] != i) {
+				throw new Exception(String.format("File \"%s\" has invalid tiles", fileName));
+			}
+		}
+		distance = calculateBoardDistance();
+	}
+
+	/**
+	 * Create a board of depth 0 from a state packed in an array, see Frontier.
+	 */
+	Board(Tables tables, byte[] tiles, int offset, int blank, byte previous,
+			int distance) {
+		this.tables = tables;
+		width = tables.width;
+		height = tables.height;
+		board = new byte[tables.squares];
+		System.arraycopy(tiles, offset, board, 0, board.length);
+		this.blank = blank;
+		this.previous = previous;
+		this.distance = distance;
+	}
+
+	/**
+	 * Reads a board stored with write(), as a board of depth 0 that remembers
+	 * the move which created it. The file name is used in error messages.
+	 */
+	public static Board read(DataInput in, String fileName) throws Exception {
+		int width = in.readUnsignedByte();
+		int height = in.readUnsignedByte();
+		if (width * height > MAX_SIZE) {
+			throw new Exception(String.format("File \"%s\" has an invalid format", fileName));
+		}
+		byte[] tiles = new byte[width * height];
+		in.readFully(tiles);
+		Board result = new Board(tiles, width, height, fileName);
+		byte previous = in.readByte();
+		if (previous < NONE || previous >= BRANCH_FACTOR) {
+			throw new Exception(String.format("Invalid move \"%d\" in file \"%s\"", previous, fileName));
+		}
+		result.previous = previous;
+		return result;
+	}
+
+	/**
+	 * Writes the size and position of this board and the move which created
+	 * it, one byte each, see read().
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(width);
+		out.writeByte(height);
+		out.write(board);
+		out.writeByte(previous);
+	}
+
+	private static byte[] readFirstBoard(String fileName, int width, int height) throws Exception {
+		BoardReader reader = new BoardReader(fileName, width, height);
+		try {
+			if (!reader.nextTiles()) {
+				throw new Exception(String.format("File \"%s\" has an invalid format", fileName));
+			}
+			return reader.tiles();
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void init(Board original) {
+		if (board == null || board.length != original.board.length) {
+			board = new byte[original.board.length];
+		}
+		System.arraycopy(original.board, 0, board, 0, board.length);
+
+		width = original.width;
+		height = original.height;
+		tables = original.tables;
+		distance = original.distance;
+		bound = original.bound;
+		blank = original.blank;
+		previous = original.previous;
+		depth = original.depth;
+	}
+
+	/**
+	 * Copy constructor
+	 */
+	public Board(Board original) {
+		init(original);
+	}
+
+	/**
+	 * Sets the size of this board, and looks up the tables for it.
+	 */
+	private void setSize(int width, int height) {
+		if (width < 2 || height < 2 || width * height > MAX_SIZE) {
+			throw new IllegalArgumentException("Invalid board size " + width
+					+ "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		tables = Tables.get(width, height);
+	}
+
+	/**
+	 * The tables are not sent along, but looked up again.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		setSize(width, height);
+	}
+
+	/**
+	 * Makes depth equal 0. Needed for job owner
+	 */
+	public void dropParams(){
+		bound = 0;
+		previous = NONE;
+		depth = 0;
+		distance = calculateBoardDistance();
+
+	}
+
+	/**
+	 * get value of tile at given position
+	 */
+	private byte getBoardValue(int x, int y) {
+		return board[(width * y) + x];
+	}
+
+	/**
+	 * set value of tile at given position
+	 */
+	private void setBoardValue(byte v, int x, int y) {
+		board[(width * y) + x] = v;
+	}
+
+	/**
+	 * Manhattan distance of the given coordinate to the goal position of the
+	 * given value.
+	 */
+	private int tileDistance(int v, int x, int y) {
+		if (v == 0) {
+			// blank always in the right position
+			return 0;
+		}
+
+		return Math.abs(tables.goalX[v] - x) + Math.abs(tables.goalY[v] - y);
+	}
+
+	/**
+	 * Calculates the total distance of all elements of this puzzle to the goal.
+	 * 
+	 */
+	private int calculateBoardDistance() {
+		int result = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				result += tileDistance(getBoardValue(x, y), x, y);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the blank in the given direction. Also updates bound, distance and
+	 * depth.
+	 */
+	private void move(int direction) {
+		int to = blank + tables.offset[direction];
+		byte v = board[to];
+
+		bound--;
+		distance += tables.delta[(v * board.length + to) * BRANCH_FACTOR
+				+ direction];
+		depth++;
+
+		board[to] = 0;
+		board[blank] = v;
+
+		previous = (byte) direction;
+		blank = to;
+	}
+
+	/**
+	 * Make all possible moves with this board position. As an optimization,
+	 * does not "undo" the move which created this board. Elements in the
+	 * returned array may be "null".
+	 */
+	public Board[] makeMoves() {
+		Board[] result = new Board[BRANCH_FACTOR];
+		int index = Tables.legalIndex(blank, previous);
+		int n = tables.count[index];
+
+		for (int i = 0; i < n; i++) {
+			result[i] = new Board(this);
+			result[i].move(tables.legal[index * BRANCH_FACTOR + i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Make all possible moves with this board position. As an optimization,
+	 * does not "undo" the move which created this board. Elements in the
+	 * returned array may be "null".
+	 */
+	public Board[] makeMoves(BoardCache cache) {
+		Board[] result = new Board[BRANCH_FACTOR];
+		int index = Tables.legalIndex(blank, previous);
+		int n = tables.count[index];
+
+		for (int i = 0; i < n; i++) {
+			result[i] = cache.get(this);
+			result[i].move(tables.legal[index * BRANCH_FACTOR + i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns true if the blank can move in the given direction, without
+	 * undoing the move which created this board.
+	 */
+	boolean canMove(int direction) {
+		int index = Tables.legalIndex(blank, previous);
+		for (int i = 0; i < tables.count[index]; i++) {
+			if (tables.legal[index * BRANCH_FACTOR + i] == direction) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the blank in the given direction, changing this board in place.
+	 */
+	void applyMove(int direction) {
+		move(direction);
+	}
+
+	/**
+	 * Undoes applyMove(direction). Previous is the lastMove() of this board
+	 * before the move was applied.
+	 */
+	void undoMove(int direction, byte previous) {
+		move(Tables.opposite(direction));
+		bound += 2;
+		depth -= 2;
+		this.previous = previous;
+	}
+
+	/**
+	 * Returns the direction the blank moved in to create this board, or NONE
+	 * for a board that was not created by a move.
+	 */
+	public byte lastMove() {
+		return previous;
+	}
+
+	/**
+	 * returns string representing the first length moves of a move stack,
+	 * one letter (L, R, U or D) per move of the blank.
+	 */
+	public static String pathToString(byte[] moves, int length) {
+		char[] result = new char[length];
+		for (int i = 0; i < length; i++) {
+			result[i] = MOVE_NAMES[moves[i]];
+		}
+		return new String(result);
+	}
+
+	/**
+	 * Manhattan distance of this board to the solution of the puzzle
+	 */
+	public int distance() {
+		return distance;
+	}
+
+	byte[] tiles() {
+		return board;
+	}
+
+	Tables tables() {
+		return tables;
+	}
+
+	int blank() {
+		return blank;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Returns the depth of this board. A board created my making a move with a
+	 * board of depth N has a depth of N+1.
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * returns the bound of this board.
+	 */
+	public int bound() {
+		return bound;
+	}
+
+	/**
+	 * sets the bound of this board.
+	 */
+	public void setBound(int bound) {
+		if (depth != 0) {
+			System.err.println("warning: setting bound only makes sense at"
+					+ "the initial job");
+		}
+		this.bound = bound;
+	}
+
+	/**
+	 * returns string representing board position.
+	 */
+	public String toString() {
+		String result = "";
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				byte value = getBoardValue(x, y);
+
+				if (value == 0) {
+					result += " .. ";
+				} else {
+					result += String.format(" %2d ", value);
+				}
+			}
+			result += "\n";
+		}
+		return result;
+	}
+}
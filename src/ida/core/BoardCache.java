@@ -1,4 +1,4 @@
-package ida.ipl;
+package ida.core;
 
 public class BoardCache {
     
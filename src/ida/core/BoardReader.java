@@ -0,0 +1,289 @@
+package ida.core;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a stream of boards from a file, "-" being standard input. Text files
+ * contain any number of boards in the format of a board file. Files ending in
+ * ".bin" contain boards in binary format: one byte per position holding the
+ * tile (0 for the blank), width * height bytes per board. Binary files are
+ * read with memory mapped I/O, so millions of boards can be read without
+ * copying them through a stream.
+ */
+public final class BoardReader {
+
+	public static final String BINARY_SUFFIX = ".bin";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// binary files are mapped in parts of about this size
+	private static final int MAP_SIZE = 64 * 1024 * 1024;
+
+	private final String fileName;
+
+	private final int width;
+
+	private final int height;
+
+	private final int boardSize;
+
+	private final byte[] tiles;
+
+	// text input
+	private InputStream in;
+
+	private byte[] buffer;
+
+	private int position;
+
+	private int limit;
+
+	private final byte[] token = new byte[16];
+
+	private int tokenLength;
+
+	// binary input
+	private FileChannel channel;
+
+	private MappedByteBuffer mapped;
+
+	private long mappedEnd;
+
+	public BoardReader(String fileName) throws IOException {
+		this(fileName, Board.NSQRT, Board.NSQRT);
+	}
+
+	/**
+	 * Creates a reader for boards of the given size.
+	 */
+	public BoardReader(String fileName, int width, int height)
+			throws IOException {
+		this.fileName = fileName;
+		this.width = width;
+		this.height = height;
+		boardSize = width * height;
+		tiles = new byte[boardSize];
+
+		if (fileName.endsWith(BINARY_SUFFIX)) {
+			channel = new RandomAccessFile(fileName, "r").getChannel();
+			mappedEnd = 0;
+		} else {
+			if (fileName.equals("-")) {
+				in = System.in;
+			} else {
+				in = new FileInputStream(fileName);
+			}
+			buffer = new byte[BUFFER_SIZE];
+			position = 0;
+			limit = 0;
+		}
+	}
+
+	/**
+	 * Returns the next board of the file, or null at the end of the file.
+	 */
+	public Board next() throws Exception {
+		if (!nextTiles()) {
+			return null;
+		}
+		return new Board(tiles, width, height, fileName);
+	}
+
+	/**
+	 * Reads the tiles of the next board into the internal tile array. Returns
+	 * false at the end of the file.
+	 */
+	boolean nextTiles() throws Exception {
+		if (channel != null) {
+			return nextBinaryTiles();
+		}
+
+		for (int i = 0; i < boardSize; i++) {
+			if (!nextToken()) {
+				if (i == 0) {
+					return false;
+				}
+				throw new Exception(String.format(
+						"File \"%s\" has an invalid format", fileName));
+			}
+			tiles[i] = (byte) parseToken();
+		}
+		return true;
+	}
+
+	byte[] tiles() {
+		return tiles;
+	}
+
+	private boolean nextBinaryTiles() throws Exception {
+		if (mapped == null || !mapped.hasRemaining()) {
+			long size = channel.size() - mappedEnd;
+			if (size == 0) {
+				return false;
+			}
+			// boards never cross the border of a part
+			if (size > MAP_SIZE / boardSize * boardSize) {
+				size = MAP_SIZE / boardSize * boardSize;
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, mappedEnd, size);
+			mappedEnd += size;
+		}
+		if (mapped.remaining() < boardSize) {
+			throw new Exception(String.format(
+					"File \"%s\" has an invalid format", fileName));
+		}
+		mapped.get(tiles);
+		return true;
+	}
+
+	private int read() throws IOException {
+		if (position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	/**
+	 * Reads the next whitespace separated token into the token buffer.
+	 * Returns false at the end of the file.
+	 */
+	private boolean nextToken() throws IOException {
+		int c = read();
+		while (isWhitespace(c)) {
+			c = read();
+		}
+		if (c == -1) {
+			return false;
+		}
+
+		tokenLength = 0;
+		while (c != -1 && !isWhitespace(c)) {
+			// longer tokens are invalid anyway
+			if (tokenLength < token.length) {
+				token[tokenLength++] = (byte) c;
+			}
+			c = read();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the tile in the token buffer: ".." for the blank or a number.
+	 */
+	private int parseToken() throws Exception {
+		if (tokenLength == 2 && token[0] == '.' && token[1] == '.') {
+			return 0;
+		}
+
+		int position = 0;
+		for (int i = 0; i < tokenLength; i++) {
+			int digit = token[i] - '0';
+			if (digit < 0 || digit > 9 || position >= boardSize) {
+				position = -1;
+				break;
+			}
+			position = position * 10 + digit;
+		}
+		if (position <= 0 || position >= boardSize) {
+			throw new Exception(String.format(
+					"Invalid tile \"%s\" in file \"%s\"", new String(token, 0,
+							tokenLength), fileName));
+		}
+		return position;
+	}
+
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		} else if (in != System.in) {
+			in.close();
+		}
+	}
+
+	/**
+	 * Parses a board size of the form "WIDTHxHEIGHT", as given to the --size
+	 * option of the drivers, and checks it is a size a Board can have.
+	 * Returns {width, height}.
+	 */
+	public static int[] parseSize(String size) {
+		int x = size.indexOf('x');
+		if (x < 0) {
+			throw new IllegalArgumentException("Invalid board size " + size);
+		}
+		int width;
+		int height;
+		try {
+			width = Integer.parseInt(size.substring(0, x));
+			height = Integer.parseInt(size.substring(x + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid board size " + size);
+		}
+		if (width < 2 || height < 2 || (long) width * height > Board.MAX_SIZE) {
+			throw new IllegalArgumentException("Invalid board size " + size
+					+ ", sides of at least 2 and at most " + Board.MAX_SIZE
+					+ " squares");
+		}
+		return new int[] { width, height };
+	}
+
+	/**
+	 * Converts a file of boards to the binary format.
+	 */
+	public static void main(String[] args) throws Exception {
+		int width = Board.NSQRT;
+		int height = Board.NSQRT;
+		if (args.length == 4 && args[0].equals("--size")) {
+			int[] size = parseSize(args[1]);
+			width = size[0];
+			height = size[1];
+			args = new String[] { args[2], args[3] };
+		}
+		if (args.length != 2 || !args[1].endsWith(BINARY_SUFFIX)) {
+			System.err.println("usage: BoardReader [--size WIDTHxHEIGHT] "
+					+ "<board file> <output" + BINARY_SUFFIX + ">");
+			System.exit(1);
+		}
+
+		BoardReader reader = new BoardReader(args[0], width, height);
+		FileOutputStream out = new FileOutputStream(args[1]);
+		byte[] buffer = new byte[BUFFER_SIZE / reader.boardSize
+				* reader.boardSize];
+		int n = 0;
+		int count = 0;
+		try {
+			while (reader.nextTiles()) {
+				// validates the board
+				new Board(reader.tiles(), width, height, args[0]);
+
+				System.arraycopy(reader.tiles(), 0, buffer, n,
+						reader.boardSize);
+				n += reader.boardSize;
+				if (n == buffer.length) {
+					out.write(buffer, 0, n);
+					n = 0;
+				}
+				count++;
+			}
+			out.write(buffer, 0, n);
+		} finally {
+			reader.close();
+			out.close();
+		}
+		System.err.println("wrote " + count + " boards to " + args[1]);
+	}
+}
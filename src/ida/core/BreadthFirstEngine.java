@@ -0,0 +1,226 @@
+package ida.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Engine searching breadth first within the bound, one layer (depth) at a
+ * time, as in breadth first iterative deepening (BFIDA*). Only the layer
+ * being expanded, the one before it and the next one are kept, in
+ * LayerTables of packed states. Identical states reached by several paths
+ * are merged and expanded once, counting for all their paths, where a depth
+ * first search repeats the subtree for every path. States of the layer two
+ * back are left out of the next one, which also leaves out the moves undoing
+ * the last one. Layers that do not fit in memory go to disk (see LayerFiles).
+ *
+ * A state left out is reached again by a longer path, which cannot be part
+ * of a solution within the first bound that has any, so the solutions are
+ * those the depth first engines count. The layers keep no paths, so with
+ * paths this searches depth first with an InPlaceEngine instead.
+ *
+ * Packing, hashing and merging every state costs more than the repeated
+ * subtrees save on sliding tile puzzles, so this is slower than the depth
+ * first engines, several times the recursive one on the default board. It
+ * is the engine for searches whose duplicates must be kept in bounded
+ * memory, not a faster one.
+ */
+public final class BreadthFirstEngine implements Engine {
+
+	private final long memory;
+
+	private final File directory;
+
+	private final InPlaceEngine paths = new InPlaceEngine();
+
+	// for the size of the last board searched
+	private Tables tables;
+
+	private StateCodec codec;
+
+	private LayerTable previous;
+
+	private LayerTable current;
+
+	private LayerTable next;
+
+	private LayerFiles files;
+
+	private byte[] tiles;
+
+	private long[] key;
+
+	private long solutions;
+
+	private long nodes;
+
+	// bound of the board searched, and the least any board cut off exceeded
+	// its own bound by
+	private int bound;
+
+	private int excess;
+
+	/**
+	 * Creates an engine using at most about memory bytes for each of the
+	 * three layers in memory, spilling to files in the given directory.
+	 */
+	public BreadthFirstEngine(long memory, File directory) {
+		this.memory = memory;
+		this.directory = directory;
+	}
+
+	public long solutions(Board board, List<byte[]> paths) {
+		bound = board.bound();
+		excess = Integer.MAX_VALUE;
+		if (paths != null) {
+			long result = this.paths.solutions(board, paths);
+			nodes = this.paths.nodes();
+			if (this.paths.nextBound() != Integer.MAX_VALUE) {
+				excess = this.paths.nextBound() - bound;
+			}
+			return result;
+		}
+		nodes = 1;
+		if (board.distance() == 0) {
+			return 1;
+		}
+		if (board.distance() > board.bound()) {
+			excess = board.distance() - board.bound();
+			return 0;
+		}
+		if (tables != board.tables()) {
+			tables = board.tables();
+			codec = new StateCodec(tables.squares);
+			previous = new LayerTable(codec, memory);
+			current = new LayerTable(codec, memory);
+			next = new LayerTable(codec, memory);
+			files = new LayerFiles(codec, directory);
+			tiles = new byte[tables.squares];
+			key = new long[codec.words];
+		}
+
+		try {
+			return search(board);
+		} catch (IOException e) {
+			throw new Error("could not spill a layer to disk", e);
+		} finally {
+			previous.clear();
+			current.clear();
+			next.clear();
+			files.clear();
+		}
+	}
+
+	public long nodes() {
+		return nodes;
+	}
+
+	public int nextBound() {
+		return excess == Integer.MAX_VALUE ? Integer.MAX_VALUE : bound + excess;
+	}
+
+	private long search(Board board) throws IOException {
+		solutions = 0;
+		nodes = 0;
+		codec.pack(board.tiles(), key, 0);
+		current.add(key, 0, board.distance(), 1);
+		// the current layer, if it is on disk
+		LayerFiles.Reader spilled = null;
+
+		try {
+			for (int depth = 0; depth < board.bound(); depth++) {
+				// moves left for the boards of the next layer
+				int left = board.bound() - depth - 1;
+				// only the root knows the move that made it
+				byte move = depth == 0 ? board.lastMove() : Board.NONE;
+				if (spilled == null) {
+					for (int slot = 0; slot < current.capacity(); slot++) {
+						if (current.used(slot)) {
+							expand(current.keys, slot * codec.words, move,
+									current.distance[slot],
+									current.weight[slot], left);
+						}
+					}
+				} else {
+					while (spilled.next()) {
+						expand(spilled.key, 0, move, spilled.distance,
+								spilled.weight, left);
+					}
+					spilled.close();
+					spilled = null;
+				}
+
+				// the layer expanded is the one before the next, and is
+				// empty if it is on disk
+				LayerTable swap = previous;
+				previous = current;
+				current = next;
+				next = swap;
+				next.clear();
+				if (files.spilling()) {
+					if (current.size() > 0) {
+						files.writeRun(current);
+						current.clear();
+					}
+					spilled = files.merge();
+					if (spilled == null) {
+						break;
+					}
+				} else if (current.size() == 0) {
+					break;
+				}
+			}
+		} finally {
+			if (spilled != null) {
+				spilled.close();
+			}
+		}
+		return solutions;
+	}
+
+	/**
+	 * Adds the children of a state to the next layer, and counts the paths
+	 * to the ones that are solutions.
+	 */
+	private void expand(long[] keys, int offset, byte move, int distance,
+			long weight, int left) throws IOException {
+		nodes++;
+		codec.unpack(keys, offset, tiles);
+		int blank = 0;
+		while (tiles[blank] != 0) {
+			blank++;
+		}
+		int index = Tables.legalIndex(blank, move);
+		for (int i = 0; i < tables.count[index]; i++) {
+			byte direction = tables.legal[index * Board.BRANCH_FACTOR + i];
+			int to = blank + tables.offset[direction];
+			byte v = tiles[to];
+			int childDistance = distance
+					+ tables.delta[(v * tables.squares + to)
+							* Board.BRANCH_FACTOR + direction];
+			if (childDistance == 0) {
+				solutions += weight;
+				continue;
+			}
+			if (childDistance > left) {
+				excess = Math.min(excess, childDistance - left);
+				continue;
+			}
+
+			tiles[blank] = v;
+			tiles[to] = 0;
+			codec.pack(tiles, key, 0);
+			tiles[to] = v;
+			tiles[blank] = 0;
+
+			if (previous.contains(key, 0)) {
+				continue;
+			}
+			next.add(key, 0, childDistance, weight);
+			if (next.full()) {
+				files.writeRun(next);
+				next.clear();
+			}
+		}
+	}
+}
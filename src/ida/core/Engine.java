@@ -0,0 +1,31 @@
+package ida.core;
+
+import java.util.List;
+
+/**
+ * A depth first search engine, expanding a board up to the bound set in the
+ * board. An engine may keep state between searches (caches, move stacks), so
+ * every search thread should use an engine of its own.
+ */
+public interface Engine {
+
+	/**
+	 * Returns the number of solutions of the given board within its bound. If
+	 * paths is not null, the moves of every solution found are added to it.
+	 */
+	long solutions(Board board, List<byte[]> paths);
+
+	/**
+	 * Returns the number of boards visited by the last call of solutions(),
+	 * a measure of the work it took.
+	 */
+	long nodes();
+
+	/**
+	 * Returns the smallest bound for the board of the last call of
+	 * solutions() under which it visits a board cut off by the bound it had:
+	 * the next bound worth trying, as no solution is shorter. Returns
+	 * Integer.MAX_VALUE if no board was cut off.
+	 */
+	int nextBound();
+}
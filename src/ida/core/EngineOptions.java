@@ -0,0 +1,25 @@
+package ida.core;
+
+/**
+ * Settings of the engines, as given on the command line of the drivers. Each
+ * setting only applies to some of the engines, see Engines.create.
+ */
+public final class EngineOptions {
+
+	// recycle boards, recursive engine
+	public boolean useCache = true;
+
+	// search threads, parallel engine
+	public int threads = Runtime.getRuntime().availableProcessors();
+
+	// moves from the goal covered by the perimeter, and megabytes it may use
+	public int perimeterDepth = 16;
+
+	public int perimeterMemory = 128;
+
+	// megabytes a layer of the breadth first engine may use in memory, and
+	// where the rest goes
+	public int layerMemory = 256;
+
+	public String spillDirectory = System.getProperty("java.io.tmpdir");
+}
@@ -0,0 +1,46 @@
+package ida.core;
+
+import java.io.File;
+
+/**
+ * Creates engines by name, so drivers can select them at runtime.
+ */
+public final class Engines {
+
+	public static final String RECURSIVE = "recursive";
+
+	public static final String IN_PLACE = "inplace";
+
+	public static final String PARALLEL = "parallel";
+
+	public static final String PERIMETER = "perimeter";
+
+	public static final String BREADTH_FIRST = "breadth";
+
+	private Engines() {
+		// only static methods
+	}
+
+	/**
+	 * Creates the named engine, with the options that apply to it.
+	 */
+	public static Engine create(String name, EngineOptions options) {
+		if (name.equals(RECURSIVE)) {
+			if (options.useCache) {
+				return new RecursiveEngine(new BoardCache());
+			}
+			return new RecursiveEngine(null);
+		} else if (name.equals(IN_PLACE)) {
+			return new InPlaceEngine();
+		} else if (name.equals(PARALLEL)) {
+			return new ParallelEngine(options.threads);
+		} else if (name.equals(PERIMETER)) {
+			return new InPlaceEngine(options.perimeterDepth,
+					options.perimeterMemory * 1024L * 1024L);
+		} else if (name.equals(BREADTH_FIRST)) {
+			return new BreadthFirstEngine(options.layerMemory * 1024L * 1024L,
+					new File(options.spillDirectory));
+		}
+		throw new IllegalArgumentException("No such engine: " + name);
+	}
+}
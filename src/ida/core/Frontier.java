@@ -0,0 +1,358 @@
+package ida.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The top of the search tree of a board, expanded breadth first to a given
+ * depth, to hand out as separate jobs. States are stored packed in primitive
+ * arrays, one layer per depth. Identical states (same tiles and same last
+ * move, so the same subtree) in a layer are merged into one, which counts
+ * for all the paths reaching it: the solutions of a job have to be
+ * multiplied by its weight(). States reached with distance 0 before the last
+ * layer are not expanded any further, but are jobs themselves. A frontier
+ * does not depend on the bound, so it can be reused for all bounds.
+ */
+public final class Frontier {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The states of one depth. Every state has one link to the state it was
+	 * reached from in the previous layer (parent and move), with paths also a
+	 * list of links for the duplicates merged into it.
+	 */
+	private static final class Layer {
+		int size = 0;
+
+		byte[] tiles;
+
+		byte[] blank;
+
+		byte[] previous;
+
+		int[] distance;
+
+		long[] weight;
+
+		int[] parent;
+
+		byte[] move;
+
+		// first extra link of each state, or -1
+		int[] firstLink;
+
+		// extra links, as a linked list per state
+		int links = 0;
+
+		int[] linkParent;
+
+		byte[] linkMove;
+
+		int[] nextLink;
+
+		// open addressing hash table of state index + 1, 0 for empty
+		int[] table;
+
+		Layer(int squares, int capacity, boolean keepPaths) {
+			tiles = new byte[capacity * squares];
+			blank = new byte[capacity];
+			previous = new byte[capacity];
+			distance = new int[capacity];
+			weight = new long[capacity];
+			parent = new int[capacity];
+			move = new byte[capacity];
+			if (keepPaths) {
+				firstLink = new int[capacity];
+				linkParent = new int[INITIAL_CAPACITY];
+				linkMove = new byte[INITIAL_CAPACITY];
+				nextLink = new int[INITIAL_CAPACITY];
+			}
+			int tableSize = 2;
+			while (tableSize < capacity * 2) {
+				tableSize *= 2;
+			}
+			table = new int[tableSize];
+		}
+	}
+
+	private final Tables tables;
+
+	private final int squares;
+
+	private final boolean keepPaths;
+
+	private final List<Layer> layers = new ArrayList<Layer>();
+
+	// states solved before the last layer, as (layer, index)
+	private int[] solvedLayer = new int[INITIAL_CAPACITY];
+
+	private int[] solvedIndex = new int[INITIAL_CAPACITY];
+
+	private int solved = 0;
+
+	/**
+	 * Expands the given board to the given depth. With keepPaths, the paths
+	 * from the board to every job are kept, see paths().
+	 */
+	public Frontier(Board root, int depth, boolean keepPaths) {
+		tables = root.tables();
+		squares = tables.squares;
+		this.keepPaths = keepPaths;
+
+		Layer layer = new Layer(squares, 1, keepPaths);
+		add(layer, root.tiles(), root.blank(), root.lastMove(),
+				root.distance(), 1, -1, Board.NONE);
+		layers.add(layer);
+
+		while (layers.size() <= depth && layer.size > 0) {
+			layer = expand(layer);
+			layers.add(layer);
+		}
+		last().table = null;
+	}
+
+	private Layer last() {
+		return layers.get(layers.size() - 1);
+	}
+
+	/**
+	 * Returns the next layer of the given (last) layer.
+	 */
+	private Layer expand(Layer layer) {
+		int depth = layers.size() - 1;
+		Layer result = new Layer(squares, Math.max(INITIAL_CAPACITY,
+				layer.size * 2), keepPaths);
+		byte[] child = new byte[squares];
+
+		for (int i = 0; i < layer.size; i++) {
+			if (layer.distance[i] == 0) {
+				addSolved(depth, i);
+				continue;
+			}
+
+			int blank = layer.blank[i];
+			int index = Tables.legalIndex(blank, layer.previous[i]);
+			for (int k = 0; k < tables.count[index]; k++) {
+				byte direction = tables.legal[index * Board.BRANCH_FACTOR + k];
+				int to = blank + tables.offset[direction];
+
+				System.arraycopy(layer.tiles, i * squares, child, 0, squares);
+				byte v = child[to];
+				child[blank] = v;
+				child[to] = 0;
+
+				add(result, child, to, direction, layer.distance[i]
+						+ tables.delta[(v * squares + to)
+								* Board.BRANCH_FACTOR + direction],
+						layer.weight[i], i, direction);
+			}
+		}
+		// only the last layer is searched for duplicates
+		layer.table = null;
+		return result;
+	}
+
+	/**
+	 * Adds a state to a layer, or merges it with an identical state already
+	 * in it.
+	 */
+	private void add(Layer layer, byte[] tiles, int blank, byte previous,
+			int distance, long weight, int parent, byte move) {
+		int mask = layer.table.length - 1;
+		int slot = hash(tiles, previous) & mask;
+		while (layer.table[slot] != 0) {
+			int i = layer.table[slot] - 1;
+			if (layer.previous[i] == previous && sameTiles(layer, i, tiles)) {
+				layer.weight[i] += weight;
+				if (keepPaths) {
+					addLink(layer, i, parent, move);
+				}
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (layer.size == layer.blank.length) {
+			grow(layer);
+			add(layer, tiles, blank, previous, distance, weight, parent, move);
+			return;
+		}
+
+		int i = layer.size;
+		System.arraycopy(tiles, 0, layer.tiles, i * squares, squares);
+		layer.blank[i] = (byte) blank;
+		layer.previous[i] = previous;
+		layer.distance[i] = distance;
+		layer.weight[i] = weight;
+		layer.parent[i] = parent;
+		layer.move[i] = move;
+		if (keepPaths) {
+			layer.firstLink[i] = -1;
+		}
+		layer.table[slot] = i + 1;
+		layer.size++;
+	}
+
+	private boolean sameTiles(Layer layer, int i, byte[] tiles) {
+		int offset = i * squares;
+		for (int k = 0; k < squares; k++) {
+			if (layer.tiles[offset + k] != tiles[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int hash(byte[] tiles, byte previous) {
+		int result = previous;
+		for (int k = 0; k < tiles.length; k++) {
+			result = 31 * result + tiles[k];
+		}
+		return result ^ (result >>> 16);
+	}
+
+	/**
+	 * Doubles the capacity of a layer, and rebuilds its hash table.
+	 */
+	private void grow(Layer layer) {
+		int capacity = layer.blank.length * 2;
+		Layer result = new Layer(squares, capacity, false);
+		System.arraycopy(layer.tiles, 0, result.tiles, 0, layer.size * squares);
+		System.arraycopy(layer.blank, 0, result.blank, 0, layer.size);
+		System.arraycopy(layer.previous, 0, result.previous, 0, layer.size);
+		System.arraycopy(layer.distance, 0, result.distance, 0, layer.size);
+		System.arraycopy(layer.weight, 0, result.weight, 0, layer.size);
+		System.arraycopy(layer.parent, 0, result.parent, 0, layer.size);
+		System.arraycopy(layer.move, 0, result.move, 0, layer.size);
+		layer.tiles = result.tiles;
+		layer.blank = result.blank;
+		layer.previous = result.previous;
+		layer.distance = result.distance;
+		layer.weight = result.weight;
+		layer.parent = result.parent;
+		layer.move = result.move;
+		if (keepPaths) {
+			int[] firstLink = new int[capacity];
+			System.arraycopy(layer.firstLink, 0, firstLink, 0, layer.size);
+			layer.firstLink = firstLink;
+		}
+
+		layer.table = result.table;
+		int mask = layer.table.length - 1;
+		byte[] tiles = new byte[squares];
+		for (int i = 0; i < layer.size; i++) {
+			System.arraycopy(layer.tiles, i * squares, tiles, 0, squares);
+			int slot = hash(tiles, layer.previous[i]) & mask;
+			while (layer.table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			layer.table[slot] = i + 1;
+		}
+	}
+
+	private void addLink(Layer layer, int i, int parent, byte move) {
+		if (layer.links == layer.linkParent.length) {
+			int[] linkParent = new int[layer.links * 2];
+			byte[] linkMove = new byte[layer.links * 2];
+			int[] nextLink = new int[layer.links * 2];
+			System.arraycopy(layer.linkParent, 0, linkParent, 0, layer.links);
+			System.arraycopy(layer.linkMove, 0, linkMove, 0, layer.links);
+			System.arraycopy(layer.nextLink, 0, nextLink, 0, layer.links);
+			layer.linkParent = linkParent;
+			layer.linkMove = linkMove;
+			layer.nextLink = nextLink;
+		}
+		layer.linkParent[layer.links] = parent;
+		layer.linkMove[layer.links] = move;
+		layer.nextLink[layer.links] = layer.firstLink[i];
+		layer.firstLink[i] = layer.links;
+		layer.links++;
+	}
+
+	private void addSolved(int layer, int index) {
+		if (solved == solvedLayer.length) {
+			int[] newLayer = new int[solved * 2];
+			int[] newIndex = new int[solved * 2];
+			System.arraycopy(solvedLayer, 0, newLayer, 0, solved);
+			System.arraycopy(solvedIndex, 0, newIndex, 0, solved);
+			solvedLayer = newLayer;
+			solvedIndex = newIndex;
+		}
+		solvedLayer[solved] = layer;
+		solvedIndex[solved] = index;
+		solved++;
+	}
+
+	/**
+	 * Returns the number of jobs in this frontier.
+	 */
+	public int size() {
+		return solved + last().size;
+	}
+
+	private int layer(int job) {
+		return job < solved ? solvedLayer[job] : layers.size() - 1;
+	}
+
+	private int index(int job) {
+		return job < solved ? solvedIndex[job] : job - solved;
+	}
+
+	/**
+	 * Returns a new board of the given job, of depth 0 but remembering the
+	 * move that created it.
+	 */
+	public Board board(int job) {
+		Layer layer = layers.get(layer(job));
+		int i = index(job);
+		return new Board(tables, layer.tiles, i * squares, layer.blank[i],
+				layer.previous[i], layer.distance[i]);
+	}
+
+	/**
+	 * Returns the number of moves between the root and the given job.
+	 */
+	public int depth(int job) {
+		return layer(job);
+	}
+
+	/**
+	 * Returns the number of paths from the root reaching the given job.
+	 */
+	public long weight(int job) {
+		return layers.get(layer(job)).weight[index(job)];
+	}
+
+	/**
+	 * Returns all weight(job) paths from the root to the given job, or null
+	 * if this frontier does not keep paths.
+	 */
+	public byte[][] paths(int job) {
+		if (!keepPaths) {
+			return null;
+		}
+		int depth = layer(job);
+		List<byte[]> result = new ArrayList<byte[]>();
+		addPaths(depth, index(job), new byte[depth], result);
+		return result.toArray(new byte[result.size()][]);
+	}
+
+	/**
+	 * Adds all paths to state i of the given layer, with the moves after it
+	 * already in path.
+	 */
+	private void addPaths(int depth, int i, byte[] path, List<byte[]> result) {
+		if (depth == 0) {
+			result.add(path.clone());
+			return;
+		}
+		Layer layer = layers.get(depth);
+		path[depth - 1] = layer.move[i];
+		addPaths(depth - 1, layer.parent[i], path, result);
+		for (int link = layer.firstLink[i]; link != -1; link = layer.nextLink[link]) {
+			path[depth - 1] = layer.linkMove[link];
+			addPaths(depth - 1, layer.linkParent[link], path, result);
+		}
+	}
+}
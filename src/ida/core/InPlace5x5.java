@@ -0,0 +1,153 @@
+package ida.core;
+
+/**
+ * In place search specialized for 5 x 5 boards. The board size is a
+ * constant here, so all index computations are folded by the compiler.
+ * Legal moves and distance changes come from the Tables of this size. Only
+ * counts solutions, InPlaceEngine uses it for boards of this size, with or
+ * without a Perimeter.
+ * InPlace4x4 is the same code for 4 x 4 boards, keep them in sync.
+ */
+final class InPlace5x5 {
+
+	private static final int WIDTH = 5;
+
+	private static final int HEIGHT = 5;
+
+	private static final int SQUARES = WIDTH * HEIGHT;
+
+	private long nodes;
+
+	// least a board cut off exceeded its bound by
+	private int excess;
+
+	// boards this close by distance are looked up in the perimeter, without
+	// one only the goal
+	private Perimeter perimeter = null;
+
+	private int limit = 0;
+
+	private long[] key;
+
+	/**
+	 * Returns the number of solutions of the given board within its bound.
+	 * The board is left unchanged.
+	 */
+	long solutions(Board board) {
+		nodes = 0;
+		excess = Integer.MAX_VALUE;
+		Tables tables = board.tables();
+		return solutions(board.tiles(), tables.delta, tables.moves,
+				board.blank(), board.distance(), board.bound(),
+				board.lastMove());
+	}
+
+	/**
+	 * Makes the search end at the given perimeter instead of the goal, or at
+	 * the goal again for null.
+	 */
+	void setPerimeter(Perimeter perimeter) {
+		this.perimeter = perimeter;
+		if (perimeter == null) {
+			limit = 0;
+		} else {
+			limit = perimeter.depth;
+			key = perimeter.newKey();
+		}
+	}
+
+	/**
+	 * Returns the number of boards visited by the last call of solutions().
+	 */
+	long nodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the least any board cut off by the last call of solutions()
+	 * exceeded its bound by, Integer.MAX_VALUE if none was cut off.
+	 */
+	int excess() {
+		return excess;
+	}
+
+	private long solutions(byte[] tiles, byte[] delta, byte[] moves,
+			int blank, int distance, int bound, int previous) {
+		nodes++;
+		if (distance <= limit) {
+			if (perimeter == null) {
+				return 1;
+			}
+			int slot = perimeter.find(tiles, key);
+			if (slot >= 0) {
+				int exact = perimeter.distance(slot);
+				if (exact > bound) {
+					excess = Math.min(excess, exact - bound);
+				}
+				return exact == bound ? perimeter.paths(slot) : 0;
+			}
+			int outside = perimeter.outside(distance);
+			if (outside > bound) {
+				excess = Math.min(excess, outside - bound);
+				return 0;
+			}
+		} else if (distance > bound) {
+			excess = Math.min(excess, distance - bound);
+			return 0;
+		}
+
+		int allowed = moves[Tables.legalIndex(blank, previous)];
+		long result = 0;
+
+		// the tile next to the blank moves into the blank
+		if ((allowed & (1 << Board.LEFT)) != 0) {
+			int to = blank - 1;
+			byte v = tiles[to];
+			tiles[blank] = v;
+			tiles[to] = 0;
+			result += solutions(tiles, delta, moves, to, distance
+					+ delta[(v * SQUARES + to) * Board.BRANCH_FACTOR
+							+ Board.LEFT], bound - 1, Board.LEFT);
+			tiles[to] = v;
+			tiles[blank] = 0;
+		}
+
+		if ((allowed & (1 << Board.RIGHT)) != 0) {
+			int to = blank + 1;
+			byte v = tiles[to];
+			tiles[blank] = v;
+			tiles[to] = 0;
+			result += solutions(tiles, delta, moves, to, distance
+					+ delta[(v * SQUARES + to) * Board.BRANCH_FACTOR
+							+ Board.RIGHT], bound - 1, Board.RIGHT);
+			tiles[to] = v;
+			tiles[blank] = 0;
+		}
+
+		if ((allowed & (1 << Board.UP)) != 0) {
+			int to = blank - WIDTH;
+			byte v = tiles[to];
+			tiles[blank] = v;
+			tiles[to] = 0;
+			result += solutions(tiles, delta, moves, to, distance
+					+ delta[(v * SQUARES + to) * Board.BRANCH_FACTOR
+							+ Board.UP], bound - 1, Board.UP);
+			tiles[to] = v;
+			tiles[blank] = 0;
+		}
+
+		if ((allowed & (1 << Board.DOWN)) != 0) {
+			int to = blank + WIDTH;
+			byte v = tiles[to];
+			tiles[blank] = v;
+			tiles[to] = 0;
+			result += solutions(tiles, delta, moves, to, distance
+					+ delta[(v * SQUARES + to) * Board.BRANCH_FACTOR
+							+ Board.DOWN], bound - 1, Board.DOWN);
+			tiles[to] = v;
+			tiles[blank] = 0;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,236 @@
+package ida.core;
+
+import java.util.List;
+
+/**
+ * Engine making and undoing moves on a single board, so the search does not
+ * allocate or copy any boards. The board passed in is restored when the
+ * search returns. Counting 4 x 4 and 5 x 5 boards is done by the size
+ * specialized InPlace4x4 and InPlace5x5.
+ *
+ * With a perimeter (see Perimeter), a board within it ends the search, as
+ * its distance to the goal and its number of shortest paths there are known.
+ * Boards close by distance that are not in the perimeter are more than its
+ * depth away, which cuts off part of the search near the goal. Solutions
+ * are then counted for exactly the bound, as IDA* finds any shorter ones at
+ * a lower bound first.
+ */
+public final class InPlaceEngine implements Engine {
+
+	private byte[] moves = new byte[0];
+
+	private final InPlace5x5 search5x5 = new InPlace5x5();
+
+	private final InPlace4x4 search4x4 = new InPlace4x4();
+
+	private long nodes;
+
+	// bound of the board searched, and the least any board cut off exceeded
+	// its own bound by
+	private int bound;
+
+	private int excess;
+
+	// depth and bytes of the perimeter, a depth below 0 for none
+	private final int perimeterDepth;
+
+	private final long perimeterMemory;
+
+	// perimeter of the size of the last board searched, see limit in
+	// InPlace5x5
+	private Perimeter perimeter = null;
+
+	private int limit = 0;
+
+	private long[] key;
+
+	public InPlaceEngine() {
+		this(-1, 0);
+	}
+
+	/**
+	 * Creates an engine searching towards a perimeter of the given depth,
+	 * using at most about memory bytes for it. A perimeter is made on first
+	 * use for each board size.
+	 */
+	public InPlaceEngine(int perimeterDepth, long perimeterMemory) {
+		this.perimeterDepth = perimeterDepth;
+		this.perimeterMemory = perimeterMemory;
+	}
+
+	public long solutions(Board board, List<byte[]> paths) {
+		return solutionsWithPrefix(board, null, paths);
+	}
+
+	public long nodes() {
+		return nodes;
+	}
+
+	public int nextBound() {
+		return excess == Integer.MAX_VALUE ? Integer.MAX_VALUE : bound + excess;
+	}
+
+	/**
+	 * Same as solutions(board, paths), for a board that is prefix.length moves
+	 * away from the start of the paths to record. Prefix is ignored if paths is
+	 * null.
+	 */
+	long solutionsWithPrefix(Board board, byte[] prefix, List<byte[]> paths) {
+		nodes = 0;
+		bound = board.bound();
+		excess = Integer.MAX_VALUE;
+		if (perimeterDepth >= 0
+				&& (perimeter == null || perimeter.tables != board.tables())) {
+			perimeter = Perimeter.get(board.tables(), perimeterDepth,
+					perimeterMemory);
+			limit = perimeter.depth;
+			key = perimeter.newKey();
+			search5x5.setPerimeter(perimeter);
+			search4x4.setPerimeter(perimeter);
+		}
+		if (paths == null) {
+			return count(board);
+		}
+
+		// a board never gets deeper than the bound it started with
+		if (moves.length < board.depth() + board.bound() + 1) {
+			moves = new byte[board.depth() + board.bound() + 1];
+		}
+		if (prefix != null) {
+			System.arraycopy(prefix, 0, moves, 0, prefix.length);
+		}
+		return solutions(board, moves, paths);
+	}
+
+	private long count(Board board) {
+		long result;
+		if (board.width() == 5 && board.height() == 5) {
+			result = search5x5.solutions(board);
+			nodes = search5x5.nodes();
+			excess = search5x5.excess();
+		} else if (board.width() == 4 && board.height() == 4) {
+			result = search4x4.solutions(board);
+			nodes = search4x4.nodes();
+			excess = search4x4.excess();
+		} else {
+			result = solutions(board);
+		}
+		return result;
+	}
+
+	private long solutions(Board board) {
+		nodes++;
+		if (board.distance() <= limit) {
+			if (perimeter == null) {
+				return 1;
+			}
+			int slot = perimeter.find(board.tiles(), key);
+			if (slot >= 0) {
+				int exact = perimeter.distance(slot);
+				if (exact > board.bound()) {
+					excess = Math.min(excess, exact - board.bound());
+				}
+				return exact == board.bound() ? perimeter.paths(slot) : 0;
+			}
+			int outside = perimeter.outside(board.distance());
+			if (outside > board.bound()) {
+				excess = Math.min(excess, outside - board.bound());
+				return 0;
+			}
+		} else if (board.distance() > board.bound()) {
+			excess = Math.min(excess, board.distance() - board.bound());
+			return 0;
+		}
+
+		Tables tables = board.tables();
+		byte previous = board.lastMove();
+		int index = Tables.legalIndex(board.blank(), previous);
+		long result = 0;
+
+		for (int i = 0; i < tables.count[index]; i++) {
+			byte direction = tables.legal[index * Board.BRANCH_FACTOR + i];
+			board.applyMove(direction);
+			result += solutions(board);
+			board.undoMove(direction, previous);
+		}
+		return result;
+	}
+
+	private long solutions(Board board, byte[] moves, List<byte[]> paths) {
+		nodes++;
+		int depth = board.depth();
+		if (board.distance() <= limit) {
+			if (perimeter == null) {
+				byte[] path = new byte[depth];
+				System.arraycopy(moves, 0, path, 0, depth);
+				paths.add(path);
+				return 1;
+			}
+			int slot = perimeter.find(board.tiles(), key);
+			if (slot >= 0) {
+				int exact = perimeter.distance(slot);
+				if (exact != board.bound()) {
+					if (exact > board.bound()) {
+						excess = Math.min(excess, exact - board.bound());
+					}
+					return 0;
+				}
+				addPaths(board, board.bound(), moves, paths);
+				return perimeter.paths(slot);
+			}
+			int outside = perimeter.outside(board.distance());
+			if (outside > board.bound()) {
+				excess = Math.min(excess, outside - board.bound());
+				return 0;
+			}
+		} else if (board.distance() > board.bound()) {
+			excess = Math.min(excess, board.distance() - board.bound());
+			return 0;
+		}
+
+		Tables tables = board.tables();
+		byte previous = board.lastMove();
+		int index = Tables.legalIndex(board.blank(), previous);
+		long result = 0;
+
+		for (int i = 0; i < tables.count[index]; i++) {
+			byte direction = tables.legal[index * Board.BRANCH_FACTOR + i];
+			moves[depth] = direction;
+			board.applyMove(direction);
+			result += solutions(board, moves, paths);
+			board.undoMove(direction, previous);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the move stack followed by every shortest path from a board in
+	 * the perimeter, which is the given number of moves from the goal, to
+	 * paths.
+	 */
+	private void addPaths(Board board, int left, byte[] moves,
+			List<byte[]> paths) {
+		int depth = board.depth();
+		if (left == 0) {
+			byte[] path = new byte[depth];
+			System.arraycopy(moves, 0, path, 0, depth);
+			paths.add(path);
+			return;
+		}
+
+		Tables tables = board.tables();
+		byte previous = board.lastMove();
+		int index = Tables.legalIndex(board.blank(), previous);
+
+		for (int i = 0; i < tables.count[index]; i++) {
+			byte direction = tables.legal[index * Board.BRANCH_FACTOR + i];
+			board.applyMove(direction);
+			int slot = perimeter.find(board.tiles(), key);
+			if (slot >= 0 && perimeter.distance(slot) == left - 1) {
+				moves[depth] = direction;
+				addPaths(board, left - 1, moves, paths);
+			}
+			board.undoMove(direction, previous);
+		}
+	}
+}
@@ -0,0 +1,415 @@
+package ida.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The layers of a breadth first search that did not fit in memory, on disk.
+ * Every time the LayerTable of a layer is full, it is written out sorted as a
+ * run and emptied. Once the layer is complete, the runs are merged with a
+ * heap into a single sorted file, adding up the paths of identical states and
+ * leaving out the states of the layer two back, which is read back to expand
+ * the layer. A record is the packed state, its distance and its weight.
+ *
+ * Files are written through two direct buffers: while one is filled, the
+ * other is written by a thread of its own, so the search does not wait for
+ * the disk, and a run is still being written when the search goes on with
+ * the next one.
+ */
+final class LayerFiles {
+
+	// bytes of each of the two buffers of the file being written
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	// bytes of the buffer of a file being read
+	private static final int READ_BUFFER_SIZE = 1 << 18;
+
+	// most runs merged at once, each with a buffer
+	private static final int MAX_RUNS = 64;
+
+	private final StateCodec codec;
+
+	private final File directory;
+
+	// bytes of a record
+	private final int recordSize;
+
+	private final List<File> runs = new ArrayList<File>();
+
+	// the last two layers merged: the one expanded now, and the one before
+	private File newer;
+
+	private File older;
+
+	private final ExecutorService writer;
+
+	// the file being written, and its buffer being filled
+	private FileChannel output;
+
+	private ByteBuffer buffer;
+
+	// the other buffer, free once the last write is done
+	private ByteBuffer spare;
+
+	private Future<?> lastWrite;
+
+	// first failure of the writer, reported by the next await()
+	private volatile IOException failure;
+
+	// read buffers of readers closed, to use again
+	private final List<ByteBuffer> readBuffers = new ArrayList<ByteBuffer>();
+
+	private final Comparator<Reader> order = new Comparator<Reader>() {
+		public int compare(Reader a, Reader b) {
+			return codec.compare(a.key, 0, b.key, 0);
+		}
+	};
+
+	LayerFiles(StateCodec codec, File directory) {
+		this.codec = codec;
+		this.directory = directory;
+		recordSize = codec.words * 8 + 2 + 8;
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "layer writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns whether the next layer goes to disk: it has runs already, or
+	 * the layer expanded now is on disk.
+	 */
+	boolean spilling() {
+		return !runs.isEmpty() || newer != null;
+	}
+
+	/**
+	 * Writes the states of the table as a sorted run, returning before the
+	 * last of it is on disk.
+	 */
+	void writeRun(LayerTable table) throws IOException {
+		File file = newFile("run");
+		runs.add(file);
+		open(file);
+		int words = codec.words;
+		for (int slot : table.sortedSlots()) {
+			put(table.keys, slot * words, table.distance[slot],
+					table.weight[slot]);
+		}
+		finish();
+	}
+
+	/**
+	 * Merges all runs into one sorted file without duplicates and without
+	 * the states of the layer two back, deleting the runs, and returns a
+	 * reader over it, or null if the layer is empty. The file is kept for the
+	 * next merge.
+	 */
+	Reader merge() throws IOException {
+		await();
+		// too many runs to read at once are merged in groups first
+		while (runs.size() > MAX_RUNS) {
+			List<File> group = new ArrayList<File>(runs.subList(0, MAX_RUNS));
+			runs.subList(0, MAX_RUNS).clear();
+			File run = newFile("run");
+			runs.add(run);
+			merge(group, null, run);
+		}
+		File file = newFile("merged");
+		List<File> group = new ArrayList<File>(runs);
+		runs.clear();
+		long records = merge(group, older, file);
+
+		if (older != null) {
+			older.delete();
+		}
+		older = newer;
+		newer = file;
+		if (records == 0) {
+			return null;
+		}
+		return new Reader(file);
+	}
+
+	/**
+	 * Merges the given runs into file, leaving out the states in removed
+	 * unless it is null, deletes the runs and returns the records written.
+	 */
+	private long merge(List<File> group, File removed, File file)
+			throws IOException {
+		PriorityQueue<Reader> heap = new PriorityQueue<Reader>(
+				Math.max(1, group.size()), order);
+		List<Reader> readers = new ArrayList<Reader>();
+		long records = 0;
+		boolean done = false;
+		try {
+			for (File run : group) {
+				Reader reader = new Reader(run);
+				readers.add(reader);
+				if (reader.next()) {
+					heap.add(reader);
+				}
+			}
+			// the states left out, read along
+			Reader left = null;
+			boolean more = false;
+			if (removed != null) {
+				left = new Reader(removed);
+				readers.add(left);
+				more = left.next();
+			}
+
+			open(file);
+			long[] key = new long[codec.words];
+			while (!heap.isEmpty()) {
+				Reader first = heap.poll();
+				System.arraycopy(first.key, 0, key, 0, key.length);
+				int distance = first.distance;
+				long weight = first.weight;
+				advance(first, heap);
+				// the same state may be at the head of several runs
+				while (!heap.isEmpty() && codec.equal(heap.peek().key, 0, key, 0)) {
+					Reader reader = heap.poll();
+					weight += reader.weight;
+					advance(reader, heap);
+				}
+
+				while (more && codec.compare(left.key, 0, key, 0) < 0) {
+					more = left.next();
+				}
+				if (more && codec.equal(left.key, 0, key, 0)) {
+					continue;
+				}
+				put(key, 0, distance, weight);
+				records++;
+			}
+			finish();
+			await();
+			done = true;
+		} finally {
+			for (Reader reader : readers) {
+				reader.close();
+			}
+			for (File run : group) {
+				run.delete();
+			}
+			if (!done) {
+				file.delete();
+			}
+		}
+		return records;
+	}
+
+	private void advance(Reader reader, PriorityQueue<Reader> heap)
+			throws IOException {
+		if (reader.next()) {
+			heap.add(reader);
+		} else {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Deletes all files, at the end of a search or after a failure.
+	 */
+	void clear() {
+		try {
+			await();
+		} catch (IOException e) {
+			// the files go anyway
+		}
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+		if (newer != null) {
+			newer.delete();
+			newer = null;
+		}
+		if (older != null) {
+			older.delete();
+			older = null;
+		}
+	}
+
+	private File newFile(String kind) throws IOException {
+		File file = File.createTempFile("layer", "." + kind, directory);
+		file.deleteOnExit();
+		return file;
+	}
+
+	private void open(File file) throws IOException {
+		if (buffer == null) {
+			buffer = newBuffer(WRITE_BUFFER_SIZE);
+			spare = newBuffer(WRITE_BUFFER_SIZE);
+		}
+		output = new FileOutputStream(file).getChannel();
+	}
+
+	private void put(long[] key, int offset, int distance, long weight)
+			throws IOException {
+		if (buffer.remaining() < recordSize) {
+			write(false);
+		}
+		for (int w = 0; w < codec.words; w++) {
+			buffer.putLong(key[offset + w]);
+		}
+		buffer.putShort((short) distance);
+		buffer.putLong(weight);
+	}
+
+	/**
+	 * Writes the rest of the file being written and closes it, in the
+	 * background.
+	 */
+	private void finish() throws IOException {
+		write(true);
+		output = null;
+	}
+
+	/**
+	 * Hands the full buffer to the writer and goes on with the other one,
+	 * once the writer is done with it.
+	 */
+	private void write(final boolean last) throws IOException {
+		await();
+		final ByteBuffer full = buffer;
+		final FileChannel channel = output;
+		full.flip();
+		lastWrite = writer.submit(new Runnable() {
+			public void run() {
+				try {
+					if (failure == null) {
+						while (full.hasRemaining()) {
+							channel.write(full);
+						}
+					}
+				} catch (IOException e) {
+					failure = e;
+				} finally {
+					full.clear();
+					if (last) {
+						try {
+							channel.close();
+						} catch (IOException e) {
+							if (failure == null) {
+								failure = e;
+							}
+						}
+					}
+				}
+			}
+		});
+		buffer = spare;
+		spare = full;
+	}
+
+	/**
+	 * Waits for the last write, and reports any failure of the writer.
+	 */
+	private void await() throws IOException {
+		if (lastWrite != null) {
+			try {
+				lastWrite.get();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("interrupted writing a layer");
+			} catch (ExecutionException e) {
+				throw new IOException("could not write a layer", e.getCause());
+			}
+			lastWrite = null;
+		}
+		if (failure != null) {
+			IOException e = failure;
+			failure = null;
+			throw e;
+		}
+	}
+
+	private ByteBuffer newBuffer(int size) {
+		return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Reads the records of a file one by one.
+	 */
+	final class Reader {
+
+		private FileChannel channel;
+
+		private ByteBuffer input;
+
+		final long[] key;
+
+		int distance;
+
+		long weight;
+
+		Reader(File file) throws IOException {
+			channel = new FileInputStream(file).getChannel();
+			if (readBuffers.isEmpty()) {
+				input = newBuffer(READ_BUFFER_SIZE);
+			} else {
+				input = readBuffers.remove(readBuffers.size() - 1);
+			}
+			input.limit(0);
+			key = new long[codec.words];
+		}
+
+		/**
+		 * Reads the next record, returns false at the end of the file.
+		 */
+		boolean next() throws IOException {
+			if (input.remaining() < recordSize) {
+				input.compact();
+				while (input.hasRemaining() && channel.read(input) >= 0) {
+					// until the buffer is full or the file ends
+				}
+				input.flip();
+				if (input.remaining() < recordSize) {
+					return false;
+				}
+			}
+			for (int w = 0; w < key.length; w++) {
+				key[w] = input.getLong();
+			}
+			distance = input.getShort();
+			weight = input.getLong();
+			return true;
+		}
+
+		/**
+		 * Closes the file, which can be done more than once.
+		 */
+		void close() {
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// only read
+			}
+			channel = null;
+			input.clear();
+			readBuffers.add(input);
+		}
+	}
+}
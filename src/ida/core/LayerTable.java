@@ -0,0 +1,171 @@
+package ida.core;
+
+import java.util.Arrays;
+
+/**
+ * One layer of a breadth first search (see BreadthFirstEngine): packed
+ * states with their distance and the number of paths reaching them, in an
+ * open addressing hash table of primitive arrays. Identical states are
+ * merged, adding up their paths. The table grows up to the memory given, and
+ * is full() once that is half used.
+ */
+final class LayerTable {
+
+	// bytes of a slot besides its key: distance and weight
+	private static final int SLOT_BYTES = 2 + 8;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final StateCodec codec;
+
+	private final int words;
+
+	private final int maxCapacity;
+
+	// packed states, words per slot, the first one 0 for an empty slot
+	long[] keys;
+
+	short[] distance;
+
+	long[] weight;
+
+	private int size = 0;
+
+	LayerTable(StateCodec codec, long memory) {
+		this.codec = codec;
+		words = codec.words;
+		int capacity = 2;
+		while (capacity * 2L * (words * 8 + SLOT_BYTES) <= memory
+				&& capacity < (1 << 30)) {
+			capacity *= 2;
+		}
+		maxCapacity = capacity;
+		allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity * words];
+		distance = new short[capacity];
+		weight = new long[capacity];
+	}
+
+	int capacity() {
+		return distance.length;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean used(int slot) {
+		return keys[slot * words] != 0;
+	}
+
+	boolean full() {
+		return size >= maxCapacity / 2;
+	}
+
+	void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, 0);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Returns the slot of the state at offset in key, or the empty slot where
+	 * it would go.
+	 */
+	private int find(long[] key, int offset) {
+		int mask = distance.length - 1;
+		int slot = codec.hash(key, offset) & mask;
+		while (used(slot) && !codec.equal(keys, slot * words, key, offset)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	boolean contains(long[] key, int offset) {
+		return size > 0 && used(find(key, offset));
+	}
+
+	/**
+	 * Adds weight paths reaching the state at offset in key. The table must
+	 * not be full().
+	 */
+	void add(long[] key, int offset, int distance, long weight) {
+		int slot = find(key, offset);
+		if (used(slot)) {
+			this.weight[slot] += weight;
+			return;
+		}
+		System.arraycopy(key, offset, keys, slot * words, words);
+		this.distance[slot] = (short) distance;
+		this.weight[slot] = weight;
+		size++;
+		if (size >= this.distance.length / 2
+				&& this.distance.length < maxCapacity) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		short[] oldDistance = distance;
+		long[] oldWeight = weight;
+		allocate(oldDistance.length * 2);
+		size = 0;
+		for (int slot = 0; slot < oldDistance.length; slot++) {
+			if (oldKeys[slot * words] != 0) {
+				add(oldKeys, slot * words, oldDistance[slot], oldWeight[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Orders slots by their states, see StateCodec.compare.
+	 */
+	int compare(int a, int b) {
+		return codec.compare(keys, a * words, keys, b * words);
+	}
+
+	/**
+	 * Returns the used slots, sorted by compare().
+	 */
+	int[] sortedSlots() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int slot = 0; slot < distance.length; slot++) {
+			if (used(slot)) {
+				result[n++] = slot;
+			}
+		}
+		sort(result, new int[size], 0, size);
+		return result;
+	}
+
+	/**
+	 * Merge sort of slots[from, to), using the same part of scratch.
+	 */
+	private void sort(int[] slots, int[] scratch, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(slots, scratch, from, middle);
+		sort(slots, scratch, middle, to);
+		if (compare(slots[middle - 1], slots[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(slots, from, scratch, from, to - from);
+		int i = from;
+		int j = middle;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < middle && compare(scratch[i], scratch[j]) <= 0)) {
+				slots[k] = scratch[i++];
+			} else {
+				slots[k] = scratch[j++];
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package ida.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Engine searching a board with several threads. The top of the tree is
+ * expanded breadth first until there are enough subtrees to keep all threads
+ * busy, after which every thread takes subtrees from the shared list and
+ * searches them with an InPlaceEngine of its own.
+ */
+public final class ParallelEngine implements Engine {
+
+	// subtrees generated per thread, so uneven subtrees even out
+	private static final int JOBS_PER_THREAD = 16;
+
+	private final int threads;
+
+	private final InPlaceEngine[] engines;
+
+	private final ExecutorService executor;
+
+	private long nodes;
+
+	// bound of the board searched, and the least any board cut off exceeded
+	// its own bound by
+	private int bound;
+
+	private int excess;
+
+	public ParallelEngine(int threads) {
+		this.threads = threads;
+		engines = new InPlaceEngine[threads];
+		for (int i = 0; i < threads; i++) {
+			engines[i] = new InPlaceEngine();
+		}
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "search thread");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public long solutions(Board board, List<byte[]> paths) {
+		List<Board> jobs = new ArrayList<Board>();
+		List<byte[]> prefixes = new ArrayList<byte[]>();
+		jobs.add(new Board(board));
+		prefixes.add(new byte[0]);
+
+		long result = 0;
+		nodes = 0;
+		bound = board.bound();
+		excess = Integer.MAX_VALUE;
+
+		// expand level by level, counting the solutions on the way
+		while (jobs.size() > 0 && jobs.size() < threads * JOBS_PER_THREAD) {
+			List<Board> nextJobs = new ArrayList<Board>();
+			List<byte[]> nextPrefixes = new ArrayList<byte[]>();
+
+			for (int i = 0; i < jobs.size(); i++) {
+				Board job = jobs.get(i);
+				byte[] prefix = prefixes.get(i);
+				nodes++;
+
+				if (job.distance() == 0) {
+					if (paths != null) {
+						paths.add(prefix);
+					}
+					result++;
+					continue;
+				}
+
+				if (job.distance() > job.bound()) {
+					excess = Math.min(excess, job.distance() - job.bound());
+					continue;
+				}
+
+				for (int direction = 0; direction < Board.BRANCH_FACTOR; direction++) {
+					if (job.canMove(direction)) {
+						Board child = new Board(job);
+						child.applyMove(direction);
+						nextJobs.add(child);
+
+						byte[] childPrefix = new byte[prefix.length + 1];
+						System.arraycopy(prefix, 0, childPrefix, 0, prefix.length);
+						childPrefix[prefix.length] = (byte) direction;
+						nextPrefixes.add(childPrefix);
+					}
+				}
+			}
+			jobs = nextJobs;
+			prefixes = nextPrefixes;
+		}
+
+		return result + search(jobs, prefixes, paths);
+	}
+
+	public long nodes() {
+		return nodes;
+	}
+
+	public int nextBound() {
+		return excess == Integer.MAX_VALUE ? Integer.MAX_VALUE : bound + excess;
+	}
+
+	/**
+	 * Searches all jobs with all threads, and returns the total number of
+	 * solutions. Solution paths are added in the order of the jobs.
+	 */
+	private long search(final List<Board> jobs, final List<byte[]> prefixes,
+			List<byte[]> paths) {
+		// the paths of every job, null without paths
+		final List<List<byte[]>> jobPaths = new ArrayList<List<byte[]>>(
+				jobs.size());
+		for (int i = 0; i < jobs.size(); i++) {
+			jobPaths.add(paths == null ? null : new ArrayList<byte[]>());
+		}
+
+		final AtomicInteger nextJob = new AtomicInteger(0);
+		// written by thread t only, read after all threads are done
+		final long[] threadSolutions = new long[threads];
+		final long[] threadNodes = new long[threads];
+		final int[] threadExcess = new int[threads];
+		Arrays.fill(threadExcess, Integer.MAX_VALUE);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			final InPlaceEngine engine = engines[t];
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					int i;
+					while ((i = nextJob.getAndIncrement()) < jobs.size()) {
+						threadSolutions[thread] += engine.solutionsWithPrefix(jobs.get(i),
+								prefixes.get(i), jobPaths.get(i));
+						threadNodes[thread] += engine.nodes();
+						int next = engine.nextBound();
+						if (next != Integer.MAX_VALUE) {
+							threadExcess[thread] = Math.min(threadExcess[thread],
+									next - jobs.get(i).bound());
+						}
+					}
+				}
+			}));
+		}
+
+		long result = 0;
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new Error("interrupted while waiting for search threads", e);
+		} catch (ExecutionException e) {
+			throw new Error("search thread failed", e.getCause());
+		}
+		for (int t = 0; t < threads; t++) {
+			result += threadSolutions[t];
+			nodes += threadNodes[t];
+			excess = Math.min(excess, threadExcess[t]);
+		}
+
+		if (paths != null) {
+			for (List<byte[]> list : jobPaths) {
+				paths.addAll(list);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,276 @@
+package ida.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * All states within a given number of moves of the goal position, with their
+ * exact distance to the goal and their number of shortest paths there, found
+ * by a breadth first search from the goal. States are packed (see
+ * StateCodec) and kept in an open addressing hash table of
+ * primitive arrays, so the table costs no objects and nothing for the
+ * garbage collector to scan. If the states of a depth do not fit in the
+ * memory given, the perimeter stops at the depth before. Perimeters are
+ * shared by all engines with the same board size, depth and memory.
+ */
+final class Perimeter {
+
+	// perimeters for each size, depth and memory, created on first use
+	private static final Map<String, Perimeter> perimeters = new HashMap<String, Perimeter>();
+
+	// bytes of a slot besides its key: distance and number of paths
+	private static final int SLOT_BYTES = 1 + 8;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	final Tables tables;
+
+	// every state this close to the goal is in the table
+	final int depth;
+
+	private final StateCodec codec;
+
+	// longs per packed state
+	private final int words;
+
+	// slots the memory given allows, the table is kept at most half full so
+	// probes stay short
+	private final int maxCapacity;
+
+	// packed states, words per slot, the first one 0 for an empty slot
+	private long[] keys;
+
+	private byte[] distance;
+
+	private long[] paths;
+
+	private int size = 0;
+
+	private Perimeter(Tables tables, int maxDepth, long memory) {
+		this.tables = tables;
+		codec = new StateCodec(tables.squares);
+		words = codec.words;
+
+		int capacity = 2;
+		while (capacity * 2L * (words * 8 + SLOT_BYTES) <= memory
+				&& capacity < (1 << 30)) {
+			capacity *= 2;
+		}
+		maxCapacity = capacity;
+		allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+
+		depth = search(Math.min(maxDepth, Byte.MAX_VALUE));
+	}
+
+	/**
+	 * Returns the perimeter of the given depth for boards of the given size,
+	 * using at most about memory bytes.
+	 */
+	static Perimeter get(Tables tables, int depth, long memory) {
+		String key = tables.width + "x" + tables.height + ":" + depth + ":"
+				+ memory;
+		synchronized (perimeters) {
+			Perimeter result = perimeters.get(key);
+			if (result == null) {
+				result = new Perimeter(tables, depth, memory);
+				perimeters.put(key, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Adds the states up to maxDepth moves from the goal, one depth at a
+	 * time while they fit. Returns the last depth added completely.
+	 */
+	private int search(int maxDepth) {
+		byte[] tiles = new byte[tables.squares];
+		for (int s = 0; s < tiles.length; s++) {
+			// tile v belongs on square v, see Tables.goalX
+			tiles[s] = (byte) s;
+		}
+		long[] key = newKey();
+		codec.pack(tiles, key, 0);
+		int[] layer = new int[] { insert(key, 0, 1) };
+		int layerSize = 1;
+
+		for (int d = 1; d <= maxDepth; d++) {
+			// every state has at most 3 neighbours besides the one it was
+			// reached from
+			long needed = 2 * (size + 3L * layerSize);
+			if (needed > distance.length && distance.length < maxCapacity) {
+				int capacity = distance.length;
+				while (capacity < needed && capacity < maxCapacity) {
+					capacity *= 2;
+				}
+				grow(capacity);
+				// the states of the last depth moved
+				layerSize = 0;
+				for (int slot = 0; slot < distance.length; slot++) {
+					if (keys[slot * words] != 0 && distance[slot] == d - 1) {
+						layer[layerSize++] = slot;
+					}
+				}
+			}
+
+			int[] next = new int[Math.max(16, layerSize * Board.BRANCH_FACTOR)];
+			int nextSize = 0;
+			for (int i = 0; i < layerSize; i++) {
+				int slot = layer[i];
+				codec.unpack(keys, slot * words, tiles);
+				int blank = 0;
+				while (tiles[blank] != 0) {
+					blank++;
+				}
+				for (int direction = 0; direction < Board.BRANCH_FACTOR; direction++) {
+					int to = blank + tables.offset[direction];
+					if (!onBoard(blank, direction)) {
+						continue;
+					}
+					tiles[blank] = tiles[to];
+					tiles[to] = 0;
+					codec.pack(tiles, key, 0);
+					tiles[to] = tiles[blank];
+					tiles[blank] = 0;
+
+					int found = find(key);
+					if (found >= 0) {
+						if (distance[found] == d) {
+							paths[found] += paths[slot];
+						}
+					} else if (size >= distance.length / 2) {
+						// the states of depth d do not all fit
+						return d - 1;
+					} else {
+						next[nextSize++] = insert(key, d, paths[slot]);
+					}
+				}
+			}
+			layer = next;
+			layerSize = nextSize;
+		}
+		return maxDepth;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity * words];
+		distance = new byte[capacity];
+		paths = new long[capacity];
+	}
+
+	private void grow(int capacity) {
+		long[] oldKeys = keys;
+		byte[] oldDistance = distance;
+		long[] oldPaths = paths;
+		allocate(capacity);
+		size = 0;
+		long[] key = newKey();
+		for (int slot = 0; slot < oldDistance.length; slot++) {
+			if (oldKeys[slot * words] != 0) {
+				System.arraycopy(oldKeys, slot * words, key, 0, words);
+				insert(key, oldDistance[slot], oldPaths[slot]);
+			}
+		}
+	}
+
+	private boolean onBoard(int s, int direction) {
+		int x = s % tables.width;
+		int y = s / tables.width;
+		switch (direction) {
+		case Board.LEFT:
+			return x > 0;
+		case Board.RIGHT:
+			return x < tables.width - 1;
+		case Board.UP:
+			return y > 0;
+		default:
+			return y < tables.height - 1;
+		}
+	}
+
+	/**
+	 * Returns an array to pack states into.
+	 */
+	long[] newKey() {
+		return new long[words];
+	}
+
+	/**
+	 * Returns the slot of a packed state, or -1 if it is not in the table.
+	 */
+	private int find(long[] key) {
+		int mask = distance.length - 1;
+		int slot = codec.hash(key, 0) & mask;
+		while (true) {
+			int offset = slot * words;
+			if (keys[offset] == 0) {
+				return -1;
+			}
+			if (codec.equal(keys, offset, key, 0)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private int insert(long[] key, int d, long n) {
+		int mask = distance.length - 1;
+		int slot = codec.hash(key, 0) & mask;
+		while (keys[slot * words] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		System.arraycopy(key, 0, keys, slot * words, words);
+		distance[slot] = (byte) d;
+		paths[slot] = n;
+		size++;
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of the board with the given tiles, or -1 if it is more
+	 * than depth moves from the goal. Key is scratch space from newKey().
+	 */
+	int find(byte[] tiles, long[] key) {
+		codec.pack(tiles, key, 0);
+		int slot = find(key);
+		if (slot >= 0 && distance[slot] > depth) {
+			// left from a depth that did not fit
+			return -1;
+		}
+		return slot;
+	}
+
+	/**
+	 * Number of moves from the state in the given slot to the goal.
+	 */
+	int distance(int slot) {
+		return distance[slot];
+	}
+
+	/**
+	 * Number of shortest paths from the state in the given slot to the goal.
+	 */
+	long paths(int slot) {
+		return paths[slot];
+	}
+
+	/**
+	 * Returns a lower bound on the moves to the goal of a board with the
+	 * given Manhattan distance that is not in the table: more than depth, and
+	 * of the same parity as the distance, as every move changes both by one.
+	 */
+	int outside(int manhattan) {
+		int result = depth + 1;
+		if (((result - manhattan) & 1) != 0) {
+			result++;
+		}
+		return Math.max(result, manhattan);
+	}
+
+	/**
+	 * Number of states in the table.
+	 */
+	int size() {
+		return size;
+	}
+}
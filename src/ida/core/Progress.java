@@ -0,0 +1,90 @@
+package ida.core;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Reports the progress of IDA* on one board bound by bound: the wall time
+ * and the boards visited for every bound, how much the tree grew since the
+ * previous bound, and the time the next bound should take if the tree grows
+ * by the same factor again. Every bound is one line on the stream, as text
+ * or as a JSON object for scripts.
+ */
+public final class Progress {
+
+	public static final String TEXT = "text";
+
+	public static final String JSON = "json";
+
+	private final PrintStream out;
+
+	private final boolean json;
+
+	// number of the board in its batch, from 1
+	private final int board;
+
+	// boards visited for the previous bound, 0 before the first one
+	private long previousNodes = 0;
+
+	public Progress(PrintStream out, boolean json, int board) {
+		this.out = out;
+		this.json = json;
+		this.board = board;
+	}
+
+	/**
+	 * Returns whether format is one of the formats of a report, TEXT or JSON.
+	 */
+	public static boolean isFormat(String format) {
+		return format.equals(TEXT) || format.equals(JSON);
+	}
+
+	/**
+	 * Reports a bound that took millis milliseconds and visited nodes boards,
+	 * and found the given number of solutions. Without solutions, another
+	 * bound follows.
+	 */
+	public void bound(int bound, long millis, long nodes, long solutions) {
+		double growth = 0;
+		if (previousNodes > 0) {
+			growth = (double) nodes / previousNodes;
+		}
+		previousNodes = nodes;
+		long next = -1;
+		if (growth > 0 && solutions == 0) {
+			next = Math.round(millis * growth);
+		}
+
+		StringBuilder line = new StringBuilder();
+		if (json) {
+			line.append("{\"board\":").append(board);
+			line.append(",\"bound\":").append(bound);
+			line.append(",\"millis\":").append(millis);
+			line.append(",\"nodes\":").append(nodes);
+			line.append(",\"solutions\":").append(solutions);
+			line.append(",\"growth\":");
+			line.append(growth > 0 ? format(growth) : "null");
+			line.append(",\"nextMillis\":");
+			line.append(next >= 0 ? Long.toString(next) : "null");
+			line.append('}');
+		} else {
+			line.append("board ").append(board);
+			line.append(" bound ").append(bound).append(": ");
+			line.append(millis).append(" ms, ");
+			line.append(nodes).append(" boards");
+			if (growth > 0) {
+				line.append(", growth ").append(format(growth));
+			}
+			if (solutions > 0) {
+				line.append(", ").append(solutions).append(" solutions");
+			} else if (next >= 0) {
+				line.append(", next bound about ").append(next).append(" ms");
+			}
+		}
+		out.println(line);
+	}
+
+	private static String format(double growth) {
+		return String.format(Locale.ROOT, "%.2f", growth);
+	}
+}
@@ -0,0 +1,154 @@
+package ida.core;
+
+import java.util.List;
+
+/**
+ * Engine creating a new board for every move, optionally recycling boards
+ * with a BoardCache. This is the original search of the solver.
+ */
+public final class RecursiveEngine implements Engine {
+
+	private final BoardCache cache;
+
+	private byte[] moves = new byte[0];
+
+	private long nodes;
+
+	// bound of the board searched, and the least any board cut off exceeded
+	// its own bound by
+	private int bound;
+
+	private int excess;
+
+	/**
+	 * Creates an engine. Cache may be null, in which case every move
+	 * allocates a new board.
+	 */
+	public RecursiveEngine(BoardCache cache) {
+		this.cache = cache;
+	}
+
+	public long solutions(Board board, List<byte[]> paths) {
+		nodes = 0;
+		bound = board.bound();
+		excess = Integer.MAX_VALUE;
+		if (paths == null) {
+			if (cache == null) {
+				return solutions(board);
+			}
+			return solutions(board, cache);
+		}
+
+		// a board never gets deeper than the bound it started with
+		if (moves.length < board.depth() + board.bound() + 1) {
+			moves = new byte[board.depth() + board.bound() + 1];
+		}
+		return solutions(board, cache, moves, paths);
+	}
+
+	public long nodes() {
+		return nodes;
+	}
+
+	public int nextBound() {
+		return excess == Integer.MAX_VALUE ? Integer.MAX_VALUE : bound + excess;
+	}
+
+	/**
+	 * expands this board into all possible positions, and returns the number of
+	 * solutions. Will cut off at the bound set in the board.
+	 */
+	private long solutions(Board board, BoardCache cache) {
+		nodes++;
+		if (board.distance() == 0) {
+			return 1;
+		}
+
+		if (board.distance() > board.bound()) {
+			excess = Math.min(excess, board.distance() - board.bound());
+			return 0;
+		}
+
+		Board[] children = board.makeMoves(cache);
+		long result = 0;
+
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] != null) {
+				result += solutions(children[i], cache);
+			}
+		}
+		cache.put(children);
+		return result;
+	}
+
+	/**
+	 * expands this board into all possible positions, and returns the number of
+	 * solutions. Will cut off at the bound set in the board.
+	 */
+	private long solutions(Board board) {
+		nodes++;
+		if (board.distance() == 0) {
+			return 1;
+		}
+
+		if (board.distance() > board.bound()) {
+			excess = Math.min(excess, board.distance() - board.bound());
+			return 0;
+		}
+
+		Board[] children = board.makeMoves();
+		long result = 0;
+
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] != null) {
+				result += solutions(children[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * expands this board into all possible positions, and returns the number of
+	 * solutions. Will cut off at the bound set in the board. Also records the
+	 * move leading to each board in the move stack, and adds a copy of the
+	 * stack to paths for every solution found. Cache may be null.
+	 */
+	private long solutions(Board board, BoardCache cache, byte[] moves,
+			List<byte[]> paths) {
+		nodes++;
+		int depth = board.depth();
+		if (depth > 0) {
+			moves[depth - 1] = board.lastMove();
+		}
+
+		if (board.distance() == 0) {
+			byte[] path = new byte[depth];
+			System.arraycopy(moves, 0, path, 0, depth);
+			paths.add(path);
+			return 1;
+		}
+
+		if (board.distance() > board.bound()) {
+			excess = Math.min(excess, board.distance() - board.bound());
+			return 0;
+		}
+
+		Board[] children;
+		if (cache == null) {
+			children = board.makeMoves();
+		} else {
+			children = board.makeMoves(cache);
+		}
+		long result = 0;
+
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] != null) {
+				result += solutions(children[i], cache, moves, paths);
+			}
+		}
+		if (cache != null) {
+			cache.put(children);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,56 @@
+package ida.core;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * The iterative deepening loop of IDA*, shared by all drivers.
+ */
+public final class Search {
+
+	private Search() {
+		// only static methods
+	}
+
+	/**
+	 * Runs IDA* on the given board with the given engine until at least one
+	 * solution is found, or the next bound would exceed maxBound. Every next
+	 * bound is the one the engine reports, skipping bounds that would search
+	 * the same boards again. Returns the number of solutions, the bound of the
+	 * board is left at the last bound tried. If paths is not null, the
+	 * solutions found are added to it. If progress is not null, the bounds
+	 * tried are printed on it. If report is not null, every bound searched is
+	 * reported to it.
+	 */
+	public static long solve(Engine engine, Board board, int maxBound,
+			List<byte[]> paths, PrintStream progress, Progress report) {
+		int bound = board.distance();
+		long solutions;
+
+		if (progress != null) {
+			progress.print("Try bound ");
+			progress.flush();
+		}
+
+		do {
+			board.setBound(bound);
+
+			if (progress != null) {
+				progress.print(bound + " ");
+				progress.flush();
+			}
+
+			long start = System.currentTimeMillis();
+			solutions = engine.solutions(board, paths);
+			if (report != null) {
+				report.bound(bound, System.currentTimeMillis() - start,
+						engine.nodes(), solutions);
+			}
+
+			bound = engine.nextBound();
+		} while (solutions == 0 && bound != Integer.MAX_VALUE
+				&& bound <= maxBound);
+
+		return solutions;
+	}
+}
@@ -0,0 +1,92 @@
+package ida.core;
+
+/**
+ * Packs the tiles of a board of one size into a few longs, a few bits per
+ * tile, for tables and files of states (see Perimeter, LayerTable). The first
+ * word holds several tiles, so it is never 0 for a state, and can mark an
+ * empty slot.
+ */
+final class StateCodec {
+
+	final int squares;
+
+	private final int bits;
+
+	// longs per packed state
+	final int words;
+
+	StateCodec(int squares) {
+		this.squares = squares;
+		int bits = 1;
+		while ((1 << bits) < squares) {
+			bits++;
+		}
+		this.bits = bits;
+		words = (squares * bits + 63) / 64;
+	}
+
+	/**
+	 * Packs the tiles into words longs of keys, from offset on.
+	 */
+	void pack(byte[] tiles, long[] keys, int offset) {
+		for (int w = 0; w < words; w++) {
+			keys[offset + w] = 0;
+		}
+		for (int s = 0; s < squares; s++) {
+			long v = tiles[s];
+			int bit = s * bits;
+			int w = offset + (bit >>> 6);
+			int shift = bit & 63;
+			keys[w] |= v << shift;
+			if (shift + bits > 64) {
+				keys[w + 1] |= v >>> (64 - shift);
+			}
+		}
+	}
+
+	/**
+	 * Unpacks the state at offset in keys into tiles.
+	 */
+	void unpack(long[] keys, int offset, byte[] tiles) {
+		long mask = (1L << bits) - 1;
+		for (int s = 0; s < squares; s++) {
+			int bit = s * bits;
+			int w = offset + (bit >>> 6);
+			int shift = bit & 63;
+			long v = keys[w] >>> shift;
+			if (shift + bits > 64) {
+				v |= keys[w + 1] << (64 - shift);
+			}
+			tiles[s] = (byte) (v & mask);
+		}
+	}
+
+	int hash(long[] keys, int offset) {
+		long h = 0;
+		for (int w = 0; w < words; w++) {
+			h = (h ^ keys[offset + w]) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (h >>> 32);
+	}
+
+	boolean equal(long[] a, int aOffset, long[] b, int bOffset) {
+		for (int w = 0; w < words; w++) {
+			if (a[aOffset + w] != b[bOffset + w]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Orders packed states, for sorted files of states.
+	 */
+	int compare(long[] a, int aOffset, long[] b, int bOffset) {
+		for (int w = 0; w < words; w++) {
+			if (a[aOffset + w] != b[bOffset + w]) {
+				return a[aOffset + w] < b[bOffset + w] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+}
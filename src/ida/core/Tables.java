@@ -0,0 +1,148 @@
+package ida.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup tables for one board size, shared by all boards of that size. With
+ * these a move is a couple of array loads: no coordinates, no Math.abs and no
+ * border checks.
+ */
+final class Tables {
+
+	// tables for each board size, created on first use
+	private static final Map<Integer, Tables> tables = new HashMap<Integer, Tables>();
+
+	final int width;
+
+	final int height;
+
+	final int squares;
+
+	// positions of all the tiles in the goal position
+	final int[] goalX, goalY;
+
+	// change of the blank's square for each direction
+	final int[] offset;
+
+	/**
+	 * change in distance when tile v on square s moves into the blank while
+	 * the blank moves to s in direction d: delta[(v * squares + s) *
+	 * BRANCH_FACTOR + d]. Zero for the blank and for moves off the board.
+	 */
+	final byte[] delta;
+
+	/**
+	 * directions the blank can move in from square s, without undoing the
+	 * previous move p (or NONE): the first count[legalIndex(s, p)] elements
+	 * from legal[legalIndex(s, p) * BRANCH_FACTOR].
+	 */
+	final byte[] legal;
+
+	final byte[] count;
+
+	// the same directions as a bit mask (1 << d), indexed by legalIndex(s, p)
+	final byte[] moves;
+
+	private Tables(int width, int height) {
+		this.width = width;
+		this.height = height;
+		squares = width * height;
+
+		goalX = new int[squares];
+		goalY = new int[squares];
+		for (int v = 0; v < squares; v++) {
+			goalX[v] = v % width;
+			goalY[v] = v / width;
+		}
+
+		offset = new int[] { -1, 1, -width, width };
+
+		delta = new byte[squares * squares * Board.BRANCH_FACTOR];
+		for (int v = 1; v < squares; v++) {
+			for (int s = 0; s < squares; s++) {
+				for (int d = 0; d < Board.BRANCH_FACTOR; d++) {
+					if (onBoard(s, opposite(d))) {
+						// the blank came from the other side of s
+						int from = s - offset[d];
+						delta[(v * squares + s) * Board.BRANCH_FACTOR + d] = (byte) (tileDistance(
+								v, from) - tileDistance(v, s));
+					}
+				}
+			}
+		}
+
+		legal = new byte[squares * (Board.BRANCH_FACTOR + 1)
+				* Board.BRANCH_FACTOR];
+		count = new byte[squares * (Board.BRANCH_FACTOR + 1)];
+		moves = new byte[squares * (Board.BRANCH_FACTOR + 1)];
+		for (int s = 0; s < squares; s++) {
+			for (int p = Board.NONE; p < Board.BRANCH_FACTOR; p++) {
+				int index = legalIndex(s, p);
+				int n = 0;
+				for (int d = 0; d < Board.BRANCH_FACTOR; d++) {
+					if (onBoard(s, d) && (p == Board.NONE || d != opposite(p))) {
+						legal[index * Board.BRANCH_FACTOR + n] = (byte) d;
+						moves[index] |= 1 << d;
+						n++;
+					}
+				}
+				count[index] = (byte) n;
+			}
+		}
+	}
+
+	/**
+	 * Returns the tables for boards of the given size.
+	 */
+	static Tables get(int width, int height) {
+		synchronized (tables) {
+			Tables result = tables.get(width * Board.MAX_SIZE + height);
+			if (result == null) {
+				result = new Tables(width, height);
+				tables.put(width * Board.MAX_SIZE + height, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Index into count, and (times BRANCH_FACTOR) into legal, for the blank on
+	 * square s after previous move p.
+	 */
+	static int legalIndex(int s, int p) {
+		return s * (Board.BRANCH_FACTOR + 1) + p + 1;
+	}
+
+	/**
+	 * Returns the direction undoing a move in direction d.
+	 */
+	static int opposite(int d) {
+		return d ^ 1;
+	}
+
+	/**
+	 * Returns true if the blank can move in direction d from square s.
+	 */
+	private boolean onBoard(int s, int d) {
+		int x = s % width;
+		int y = s / width;
+		switch (d) {
+		case Board.LEFT:
+			return x > 0;
+		case Board.RIGHT:
+			return x < width - 1;
+		case Board.UP:
+			return y > 0;
+		default:
+			return y < height - 1;
+		}
+	}
+
+	/**
+	 * Manhattan distance of square s to the goal position of tile v.
+	 */
+	private int tileDistance(int v, int s) {
+		return Math.abs(goalX[v] - s % width) + Math.abs(goalY[v] - s / width);
+	}
+}
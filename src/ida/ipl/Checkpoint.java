@@ -0,0 +1,89 @@
+package ida.ipl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Checkpoint file of the master. The state is encoded in memory first (see
+ * Ida.writeState), so the file is written without holding any lock. A
+ * checkpoint is written to a temporary file next to the real one, forced to
+ * disk and then renamed over it, so a crash leaves either the old or the new
+ * checkpoint, never a partial one.
+ */
+public final class Checkpoint {
+
+    // "IDA" and a format version
+    private static final int MAGIC = 0x49444103;
+
+    private final String fileName;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    public Checkpoint(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Starts encoding a new checkpoint, returning the stream to write the
+     * state to.
+     */
+    public DataOutputStream start() throws IOException {
+        bytes.reset();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        return out;
+    }
+
+    /**
+     * Writes the checkpoint encoded since start() to the file.
+     */
+    public void write() throws IOException {
+        File file = new File(fileName);
+        File temporary = new File(fileName + ".tmp");
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file))
+            throw new IOException("could not rename " + temporary + " to " + file);
+    }
+
+    /**
+     * Reads the checkpoint file, returning the stream to read the state from.
+     */
+    public DataInputStream read() throws Exception {
+        FileInputStream in = new FileInputStream(fileName);
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = in.getChannel();
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read it all
+            }
+        } finally {
+            in.close();
+        }
+        DataInputStream result = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+        if (buffer.hasRemaining() || buffer.capacity() < 4 || result.readInt() != MAGIC)
+            throw new Exception(String.format("File \"%s\" is not a checkpoint", fileName));
+        return result;
+    }
+
+    public String fileName() {
+        return fileName;
+    }
+}
@@ -1,34 +1,183 @@
 package ida.ipl;
 import ibis.ipl.*;
+import ida.core.Board;
+import ida.core.BoardReader;
+import ida.core.Engine;
+import ida.core.EngineOptions;
+import ida.core.Engines;
+import ida.core.Frontier;
+import ida.core.Progress;
+import ida.core.Search;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
-public class Ida implements MessageUpcall{
+public class Ida implements MessageUpcall, RegistryEventHandler{
 
-    // Level of deepness master node should go in for generating the jobs
-    static int MAXHOPS = 2;
+    // default number of moves from the board to the jobs handed out
+    static final int FRONTIER_DEPTH = 3;
+
+    // messages of jobs per search thread in a round, so uneven jobs even out
+    static final int JOBS_PER_THREAD = 16;
+
+    // a job visiting more boards than this many shares of a round is split
+    static final int SPLIT_FACTOR = 2;
+
+    // most levels a job is split in one go
+    static final int MAX_SPLIT = 4;
+
+    // default seconds between two checkpoints of the master
+    static final int CHECKPOINT_INTERVAL = 60;
+
+    // most milliseconds the master waits for the workers to leave at the end
+    static final int TERMINATION_TIMEOUT = 10000;
+
+    // milliseconds between two checks of a worker whether the pool ended
+    static final int TERMINATION_POLL = 1000;
+
+    // messages per search thread a worker node queues for the master
+    static final int OUTBOX_PER_THREAD = 2;
+
+    /**
+     * Result of one board, collected by the master from the results of its jobs
+     */
+    private static final class BoardResult {
+        long solutionsNum = 0;
+        long solutionsStep = Integer.MAX_VALUE;
+        // bound of the next round, the least the jobs of this one reported
+        int nextBound = Integer.MAX_VALUE;
+        long jobsLeft = 0;
+        // with --whole, the jobs of a board split among the workers and the
+        // bound they are searched with, null while the board is whole
+        List<Job> splitJobs = null;
+        int bound;
+        List<byte[]> solutionPaths = new ArrayList<byte[]>();
+        long startTime;
+        long endTime;
+
+        boolean solved() {
+            return jobsLeft == 0 && solutionsNum > 0;
+        }
+    }
 
     private Ibis myIbis;
-    private List<Board> masterJobsList;
-    private Boolean jobListBusy = false;
-    private int solutionsNum = 0;
+    // jobs still to hand out, the jobs in one entry go out in one message
+    private List<Job[]> masterJobsList;
+    private BoardResult[] results;
+    // frontier of each board, kept once generated
+    private Frontier[] frontiers;
+    private int frontierDepth = FRONTIER_DEPTH;
+    // jobs of the board being solved and the bound of the current round
+    private List<Job> roundJobs;
+    private int roundBound;
+    private boolean usePaths = false;
+    // format of the progress reports on standard error, null for none
+    private String progress = null;
+    // hand out whole boards, only splitting them when workers run dry
+    private boolean wholeBoards = false;
+    // workers of the master, and the job messages handed out to them
+    private Workers<Job[]> workers;
+    private boolean allBoardsDone = false;
+    // lock of the job list and the results, waited on for changes to them
+    private final Object jobListBusy = new Object();
     long jobCounter = 0;
-    long solutionsStep = Integer.MAX_VALUE;
-    long startTime;
-    long endTime;
+    // jobs fetched by a worker node for its search threads
+    private List<MessageObject> localJobs = new ArrayList<MessageObject>();
+    // search threads of a worker node waiting for a job
+    private int idleThreads = 0;
+    // results of a worker node not sent yet, they go along with its next job
+    // request, or on their own while a request waits for its reply
+    private ResultSum unsent = null;
+    private boolean requestWaiting = false;
+    // messages of a worker node to send to the master, null to stop sending
+    private List<MessageObject> outbox = new ArrayList<MessageObject>();
+    private int outboxSize;
+    // search threads of the master itself
+    private int masterThreads = 0;
+    // set when a worker node is asked to leave the pool before the end
+    private volatile boolean leaving = false;
+    // set when a worker node got all its work done
+    private volatile boolean workDone = false;
+    // checkpoints of the master, with --checkpoint or --resume
+    private Checkpoint checkpoint = null;
+    private int checkpointInterval = CHECKPOINT_INTERVAL;
+    private List<Board> checkpointBoards;
+    // round under way in the checkpoint resumed from: its board, bound, next
+    // bound so far, jobs and the jobs still to search (null to search them all)
+    private int resumedBoard = -1;
+    private int resumedBound;
+    private int resumedNextBound;
+    private List<Job> resumedJobs;
+    private List<Job> resumedPending;
+    // nodes per group with a sub-master of its own, 0 for no groups
+    private int groupSize = 0;
+    // groups are the clusters of the nodes instead, see cluster()
+    private boolean groupByCluster = false;
+    // set on a sub-master
+    private SubMaster subMaster = null;
 
     public Ida(String[] args) throws Exception {
         String fileName = null;
-        boolean cache = true;
+        String batchFileName = null;
+        String resumeFileName = null;
+        int width = Board.NSQRT;
+        int height = Board.NSQRT;
         int length = 103;
+        String engineName = Engines.RECURSIVE;
+        EngineOptions options = new EngineOptions();
+        int searchThreads = 1;
 
+        // options used by all nodes
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("--nocache")) {
-                cache = false;
+                options.useCache = false;
+            } else if (args[i].equals("--paths")) {
+                usePaths = true;
+            } else if (args[i].equals("--engine")) {
+                engineName = args[++i];
+            } else if (args[i].equals("--threads")) {
+                options.threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--workers")) {
+                searchThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--perimeter-depth")) {
+                options.perimeterDepth = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--perimeter-memory")) {
+                options.perimeterMemory = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--layer-memory")) {
+                options.layerMemory = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--spill-dir")) {
+                options.spillDirectory = args[++i];
+            } else if (args[i].equals("--progress")) {
+                progress = args[++i];
+                if (!Progress.isFormat(progress)) {
+                    System.err.println("No such progress format: " + progress);
+                    System.exit(1);
+                }
+            } else if (args[i].equals("--group")) {
+                i++;
+                if (args[i].equals("cluster"))
+                    groupByCluster = true;
+                else
+                    groupSize = Integer.parseInt(args[i]);
             }
         }
-        myIbis = IbisFactory.createIbis(ibisCapabilities, null,
+        // an engine for every search thread
+        Engine[] engines = new Engine[searchThreads];
+        try {
+            for (int i = 0; i < engines.length; i++)
+                engines[i] = Engines.create(engineName, options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        // registry events are only enabled on the master
+        myIbis = IbisFactory.createIbis(ibisCapabilities, this,
             requestPortType, replyPortType);
         IbisIdentifier server = myIbis.registry().elect("Server");
 
@@ -36,29 +185,104 @@ public class Ida implements MessageUpcall{
             for (int i = 0; i < args.length; i++) {
                 if (args[i].equals("--file")) {
                     fileName = args[++i];
+                } else if (args[i].equals("--batch")) {
+                    batchFileName = args[++i];
+                } else if (args[i].equals("--size")) {
+                    int[] size = null;
+                    try {
+                        size = BoardReader.parseSize(args[++i]);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                        System.exit(1);
+                    }
+                    width = size[0];
+                    height = size[1];
+                } else if (args[i].equals("--depth")) {
+                    frontierDepth = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--whole")) {
+                    wholeBoards = true;
+                } else if (args[i].equals("--checkpoint")) {
+                    checkpoint = new Checkpoint(args[++i]);
+                } else if (args[i].equals("--checkpoint-interval")) {
+                    checkpointInterval = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--resume")) {
+                    resumeFileName = args[++i];
                 } else if (args[i].equals("--length")) {
                     i++;
                     length = Integer.parseInt(args[i]);
-                } else if(!args[i].equals("--nocache")){
+                } else if (args[i].equals("--engine") || args[i].equals("--threads")
+                        || args[i].equals("--workers") || args[i].equals("--group")
+                        || args[i].equals("--perimeter-depth") || args[i].equals("--perimeter-memory")
+                        || args[i].equals("--layer-memory") || args[i].equals("--spill-dir")
+                        || args[i].equals("--progress")) {
+                    i++;
+                } else if(!args[i].equals("--nocache") && !args[i].equals("--paths")){
                     System.err.println("No such option: " + args[i]);
                     System.exit(1);
                 }
             }
-            Board initialBoard = null;
-            if (fileName == null) {
-                initialBoard = new Board(length);
+            List<Board> boards = new ArrayList<Board>();
+            boolean batch = batchFileName != null;
+            if (resumeFileName != null) {
+                if (fileName != null || batchFileName != null) {
+                    System.err.println("--resume takes the boards from the checkpoint");
+                    System.exit(1);
+                }
+                try {
+                    batch = resume(new Checkpoint(resumeFileName), boards);
+                } catch (Exception e) {
+                    System.err.println("could not resume from checkpoint: " + e);
+                    System.exit(1);
+                }
+                // carry on checkpointing to the same file
+                if (checkpoint == null)
+                    checkpoint = new Checkpoint(resumeFileName);
+            } else if (batchFileName != null) {
+                try {
+                    boards = readBoards(batchFileName, width, height);
+                } catch (Exception e) {
+                    System.err
+                            .println("could not read boards from file: " + e);
+                    System.exit(1);
+                }
+            } else if (fileName == null) {
+                boards.add(new Board(width, height, length));
             } else {
                 try {
-                    initialBoard = new Board(fileName);
+                    boards.add(new Board(fileName, width, height));
                 } catch (Exception e) {
                     System.err
                             .println("could not initialize board from file: " + e);
                     System.exit(1);
                 }
             }
-            masterNode(initialBoard, cache);
+            masterNode(boards, batch, engines);
+        } else if (groupSize > 0 || groupByCluster) {
+            // every group of nodes elects a sub-master, which is its master
+            IbisIdentifier groupMaster;
+            if (groupByCluster) {
+                // the master serves its own cluster, a sub-master asks it for
+                // work over the wide area link one message at a time, while
+                // serving its cluster from what it has
+                String cluster = cluster(myIbis.identifier());
+                if (cluster.equals(cluster(server)))
+                    groupMaster = server;
+                else
+                    groupMaster = myIbis.registry().elect("Cluster " + cluster);
+            } else {
+                long node = myIbis.registry().getSequenceNumber("node");
+                groupMaster = myIbis.registry().elect("Group " + node / groupSize);
+            }
+            if (groupMaster.equals(myIbis.identifier())) {
+                subMaster = new SubMaster(this, myIbis, server, engines);
+                subMaster.run();
+            } else {
+                slaveNode(groupMaster, engines);
+            }
+            workDone = true;
         } else {
-            slaveNode(server, cache);
+            slaveNode(server, engines);
+            workDone = true;
         }
         myIbis.end();
     }
@@ -74,57 +298,24 @@ public class Ida implements MessageUpcall{
      */
     PortType replyPortType = new PortType(PortType.COMMUNICATION_RELIABLE,
             PortType.SERIALIZATION_OBJECT, PortType.RECEIVE_EXPLICIT,
-            PortType.CONNECTION_MANY_TO_ONE);
+            PortType.RECEIVE_TIMEOUT, PortType.CONNECTION_MANY_TO_ONE);
 
     IbisCapabilities ibisCapabilities = new IbisCapabilities(
-            IbisCapabilities.ELECTIONS_STRICT);
-
-
-    private int solutions(Board board, BoardCache cache) {
-        if (board.distance() == 0)
-            return 1;
-
-        if (board.distance() > board.bound() || board.distance() > solutionsStep)
-            return 0;
-        Board[] children;
-        if(cache == null)
-            children = board.makeMoves();
-        else
-            children = board.makeMoves(cache);
-        int result = 0;
-
-        for (int i = 0; i < children.length; i++) {
-            if (children[i] != null) {
-                result += solutions(children[i], cache);
-            }
-        }
-        cache.put(children);
-        return result;
-    }
+            IbisCapabilities.ELECTIONS_STRICT,
+            IbisCapabilities.MEMBERSHIP_TOTALLY_ORDERED,
+            IbisCapabilities.MALLEABLE,
+            IbisCapabilities.TERMINATION);
 
-    private Pair<Integer, Integer> solve(Board board, boolean useCache) {
-        BoardCache cache = null;
-        if (useCache) {
-            cache = new BoardCache();
-        }
-        int bound = board.distance();
-        int solutions = 0;
-        System.out.print("Try bound ");
-        System.out.flush();
-
-        do {
-            System.out.print(bound + " ");
-            System.out.flush();
 
-            board.setBound(bound);
-            if (useCache) {
-                solutions = solutions(board, cache);
-            } else {
-                solutions = solutions(board, null);
-            }
-            bound += 2;
-        } while (solutions == 0 || bound > solutionsStep);
-        return new Pair<Integer, Integer>(solutions, board.bound());
+    /**
+     * Returns the cluster of a node: its location without the node itself,
+     * such as "das4" for "node042@das4" (see the ibis.location property).
+     */
+    private static String cluster(IbisIdentifier ibis) {
+        Location location = ibis.location();
+        if (location.numberOfLevels() > 1)
+            return location.getParent().toString();
+        return location.toString();
     }
 
 
@@ -138,144 +329,1181 @@ public class Ida implements MessageUpcall{
         MessageObject response = new MessageObject();
         if(requestor == null)
 	    	return;
-        synchronized (masterJobsList){
+        synchronized (jobListBusy){
             if(readMessage.messageType == MessageObject.message_id.JOB_STEALING){
-                // Provide slave with one another job
-                synchronized (jobListBusy){
-                    if(masterJobsList.size() > 0){
-                        response.messageType = MessageObject.message_id.JOB_BOARD;
-                        response.data = masterJobsList.get(0);
-                        masterJobsList.remove(0);
-                        response.maximumBound = solutionsStep;
-                    }
-                }
+                if (readMessage.results != null)
+                    addResult(readMessage.results);
+                // Provide slave with one another job, or with one of the next
+                // round once it is there
+                workers.request(requestor, (Integer) readMessage.data);
+                jobListBusy.notifyAll();
 
-                SendPort replyPort = myIbis.createSendPort(replyPortType);
-                replyPort.connect(requestor);
-                WriteMessage reply = replyPort.newMessage();
-                reply.writeObject((response));
-                reply.finish();
-                replyPort.close();
+            } else if (readMessage.messageType == MessageObject.message_id.SOLUTIONS_NUM){
+                addResult(readMessage);
+            } else if (readMessage.messageType == MessageObject.message_id.JOB_RETURN){
+                // a leaving worker hands back the jobs it did not start
+                for (long ticket : (long[]) readMessage.data)
+                    workers.giveBack(ticket);
+                workers.serveWaiting();
+                jobListBusy.notifyAll();
+            }
+        }
+    }
 
+    /**
+     * Adds the result of one or more job messages to the result of their
+     * board. Should be called with the jobListBusy lock held.
+     */
+    private void addResult(MessageObject readMessage) {
+        int known = 0;
+        for (long ticket : readMessage.tickets) {
+            if (workers.work(ticket) != null)
+                known++;
+        }
+        if (known < readMessage.tickets.length) {
+            // some were handed out again after their worker was taken for
+            // dead, the result cannot be told apart: search the others again
+            for (long ticket : readMessage.tickets)
+                workers.giveBack(ticket);
+            if (known > 0) {
+                workers.serveWaiting();
+                jobListBusy.notifyAll();
+            }
+            return;
+        }
+        for (long ticket : readMessage.tickets)
+            workers.answered(ticket);
+        jobCounter -= known;
+        BoardResult result = results[readMessage.boardId];
+        result.jobsLeft -= known;
+        result.nextBound = Math.min(result.nextBound, readMessage.nextBound);
+        if (readMessage.jobs != null) {
+            List<Job> jobs = wholeBoards ? result.splitJobs : roundJobs;
+            for (int i = 0; i < readMessage.jobs.length; i++)
+                jobs.get(readMessage.jobs[i]).nodes = readMessage.nodes[i];
+        }
+        if (readMessage.solutions == 0) {
+            // no solutions within the bound this job was given
+        } else if(readMessage.steps < result.solutionsStep){
+            result.solutionsNum = readMessage.solutions;
+            result.solutionsStep = readMessage.steps;
+            result.solutionPaths.clear();
+            addSolutionPaths(result, readMessage.paths);
+        } else if (readMessage.steps == result.solutionsStep){
+            result.solutionsNum += readMessage.solutions;
+            addSolutionPaths(result, readMessage.paths);
+        } else {
+            // do nothing
+        }
+        if (result.jobsLeft == 0 && result.splitJobs != null && result.solutionsNum == 0
+                && result.nextBound != Integer.MAX_VALUE) {
+            // bounds no job reaches further with are skipped
+            result.bound = result.nextBound;
+            result.nextBound = Integer.MAX_VALUE;
+            queueSplitJobs(result);
+            workers.serveWaiting();
+            jobListBusy.notifyAll();
+        }
+        if (result.jobsLeft == 0)
+            result.endTime = System.currentTimeMillis();
+        if(jobCounter == 0)
+            jobListBusy.notifyAll();
+    }
 
-            } else if (readMessage.messageType == MessageObject.message_id.SOLUTIONS_NUM){
-                --jobCounter;
-                Pair<Integer, Integer> res = (Pair<Integer, Integer>)readMessage.data;
-                System.out.println("GOT RESULT (" + res.getKey() + " ; " + res.getValue() + ")");
-                synchronized(jobListBusy){
-                    if(res.getValue() < solutionsStep){
-                        solutionsNum = res.getKey();
-                        solutionsStep = res.getValue();
-                        endTime = System.currentTimeMillis();
-                    } else if (res.getValue() == solutionsStep){
-                        solutionsNum += res.getKey();
-                        endTime = System.currentTimeMillis();
-                    } else {
-                        // do nothing
+    /**
+     * Removes the first entry of the job list, or the last one if fromTail is
+     * set, and returns the message handing it out to the given worker. With
+     * --whole, the entry is a single job the worker deepens until it has a
+     * solution, and once fewer whole boards than workers are left, the
+     * largest whole board is split into subtree jobs first so the last boards
+     * do not keep most of the pool idle. The jobs of a split board are
+     * searched one bound at a time, as the jobs of a round, with the master
+     * going on to the next bound once they are all answered. Otherwise the
+     * entry holds jobs of the current round, to search with the bound of that
+     * round only. The search threads of the master take the last entry, the
+     * smallest. Should be called with the jobListBusy lock held.
+     */
+    private MessageObject nextJob(IbisIdentifier worker, boolean fromTail) {
+        if (fromTail) {
+            Job[] jobs = masterJobsList.remove(masterJobsList.size() - 1);
+            return jobMessage(worker, jobs);
+        }
+        Job job = masterJobsList.get(0)[0];
+        BoardResult result = results[job.boardId];
+        if (wholeBoards && result.splitJobs == null && masterJobsList.size() < workers.size() + 1) {
+            // the job list is sorted on distance, largest boards first
+            masterJobsList.remove(0);
+            jobCounter--;
+            result.jobsLeft--;
+            result.splitJobs = getjobs(job.board, job.boardId);
+            for (int i = 0; i < result.splitJobs.size(); i++)
+                result.splitJobs.get(i).id = i;
+            result.bound = job.board.distance();
+            queueSplitJobs(result);
+        }
+        return jobMessage(worker, masterJobsList.remove(0));
+    }
+
+    /**
+     * Puts the jobs of a split board at the front of the job list, one per
+     * message, to search with the bound of the board. Should be called with
+     * the jobListBusy lock held.
+     */
+    private void queueSplitJobs(BoardResult result) {
+        for (int i = 0; i < result.splitJobs.size(); i++)
+            masterJobsList.add(i, new Job[] { result.splitJobs.get(i) });
+        jobCounter += result.splitJobs.size();
+        result.jobsLeft += result.splitJobs.size();
+    }
+
+    private MessageObject jobMessage(IbisIdentifier worker, Job[] jobs) {
+        Job job = jobs[0];
+        BoardResult result = results[job.boardId];
+        if (result.startTime == 0)
+            result.startTime = System.currentTimeMillis();
+
+        MessageObject response = new MessageObject();
+        if (wholeBoards && result.splitJobs != null) {
+            response.messageType = MessageObject.message_id.JOB_ROUND;
+            response.data = jobs;
+            response.maximumBound = result.bound;
+        } else if (wholeBoards) {
+            response.messageType = MessageObject.message_id.JOB_BOARD;
+            response.data = job;
+            response.maximumBound = result.solutionsStep;
+        } else {
+            response.messageType = MessageObject.message_id.JOB_ROUND;
+            response.data = jobs;
+            response.maximumBound = roundBound;
+        }
+        response.ticket = workers.handOut(jobs, worker);
+        return response;
+    }
+
+    /**
+     * A worker left or died: its jobs go to the others.
+     */
+    private void workerGone(IbisIdentifier worker) {
+        synchronized (jobListBusy){
+            workers.forget(worker);
+            workers.serveWaiting();
+            jobListBusy.notifyAll();
+        }
+    }
+
+    public void left(IbisIdentifier ibis) {
+        if (subMaster != null)
+            subMaster.workerGone(ibis);
+        else
+            workerGone(ibis);
+    }
+
+    public void died(IbisIdentifier ibis) {
+        System.err.println(ibis + " died");
+        if (subMaster != null)
+            subMaster.workerGone(ibis);
+        else
+            workerGone(ibis);
+    }
+
+    public void joined(IbisIdentifier ibis) {
+        if (ibis.equals(myIbis.identifier()) || subMaster != null)
+            return;
+        synchronized (jobListBusy){
+            // give the new worker a share of the round under way
+            if (!wholeBoards && masterJobsList.size() > 0)
+                resplitRound(masterJobsList.size() + JOBS_PER_THREAD);
+        }
+    }
+
+    public void gotSignal(String signal, IbisIdentifier source) {
+    }
+
+    public void electionResult(String electionName, IbisIdentifier winner) {
+    }
+
+    public void poolClosed() {
+    }
+
+    public void poolTerminated(IbisIdentifier source) {
+    }
+
+    /**
+     * Reads all boards of a batch file ("-" for standard input, see
+     * BoardReader for the formats).
+     */
+    private static List<Board> readBoards(String fileName, int width, int height) throws Exception {
+        BoardReader reader = new BoardReader(fileName, width, height);
+        List<Board> result = new ArrayList<Board>();
+        try {
+            Board board;
+            while ((board = reader.next()) != null)
+                result.add(board);
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    private void addSolutionPaths(BoardResult result, byte[][] paths) {
+        if (paths == null)
+            return;
+        for (byte[] path : paths)
+            result.solutionPaths.add(path);
+    }
+
+    /**
+     * Returns the report of the progress on board n (from 0), null if there
+     * are no reports.
+     */
+    private Progress report(int n) {
+        if (progress == null)
+            return null;
+        return new Progress(System.err, progress.equals(Progress.JSON), n + 1);
+    }
+
+    private void printResult(int n, boolean batch) {
+        BoardResult result = results[n];
+        if (batch) {
+            System.out.println("board " + (n + 1) + ": " + result.solutionsNum + " solutions of "
+                    + result.solutionsStep + " steps");
+            System.err.println("board " + (n + 1) + " took " + (result.endTime - result.startTime) + " milliseconds");
+        } else {
+            System.err.println("Job is done. Solutions number = " + result.solutionsNum + "; Time spent on task is " + (result.endTime - result.startTime));
+        }
+        for (byte[] path : result.solutionPaths)
+            System.out.println("solution: " + Board.pathToString(path, path.length));
+    }
+
+    /**
+     * Starts the thread writing a checkpoint every checkpointInterval
+     * seconds, until all boards are done.
+     */
+    private void startCheckpoints(final boolean batch) {
+        Thread thread = new Thread("checkpoint") {
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(checkpointInterval * 1000L);
+                        synchronized (jobListBusy){
+                            if (allBoardsDone)
+                                return;
+                        }
+                        saveCheckpoint(batch);
                     }
-                    if(jobCounter == 0)
-                        jobListBusy.notify();
+                } catch (InterruptedException e) {
+                    // never interrupted
                 }
+            }
+        };
+        // a checkpoint half written is never renamed into place
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Writes a checkpoint of the master. The upcalls are held up only while
+     * the state is encoded in memory, not while it is written to disk.
+     */
+    private void saveCheckpoint(boolean batch) {
+        synchronized (checkpoint) {
+            try {
+                DataOutputStream out = checkpoint.start();
+                synchronized (jobListBusy){
+                    writeState(out, batch);
+                }
+                checkpoint.write();
+            } catch (IOException e) {
+                System.err.println("could not write checkpoint " + checkpoint.fileName() + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Encodes the state of the master: the boards and their results so far,
+     * and the jobs of the round under way with the boards they visited and
+     * whether they are still to be searched. Whole board jobs are searched
+     * again from the start after a resume. Should be called with the
+     * jobListBusy lock held.
+     */
+    private void writeState(DataOutputStream out, boolean batch) throws IOException {
+        out.writeBoolean(batch);
+        out.writeBoolean(wholeBoards);
+        out.writeBoolean(usePaths);
+        int round = -1;
+        if (!wholeBoards && roundJobs != null && !results[roundJobs.get(0).boardId].solved())
+            round = roundJobs.get(0).boardId;
+        out.writeInt(round);
+
+        long now = System.currentTimeMillis();
+        out.writeInt(checkpointBoards.size());
+        for (int n = 0; n < checkpointBoards.size(); n++) {
+            checkpointBoards.get(n).write(out);
+            BoardResult result = results[n];
+            out.writeBoolean(result.solved());
+            out.writeLong(result.solutionsNum);
+            out.writeLong(result.solutionsStep);
+            if (result.startTime == 0)
+                out.writeLong(-1);
+            else
+                out.writeLong((result.solved() ? result.endTime : now) - result.startTime);
+            writePaths(out, result.solutionPaths.toArray(new byte[result.solutionPaths.size()][]));
+        }
+        if (round < 0)
+            return;
+
+        boolean[] pending = new boolean[roundJobs.size()];
+        for (Job[] jobs : masterJobsList) {
+            for (Job job : jobs)
+                pending[job.id] = true;
+        }
+        for (Job[] jobs : workers.unanswered()) {
+            for (Job job : jobs)
+                pending[job.id] = true;
+        }
+        out.writeInt(roundBound);
+        out.writeInt(results[round].nextBound);
+        out.writeInt(roundJobs.size());
+        for (Job job : roundJobs) {
+            job.board.write(out);
+            out.writeInt(job.depth);
+            out.writeLong(job.weight);
+            out.writeLong(job.nodes);
+            out.writeBoolean(pending[job.id]);
+            writePaths(out, job.paths);
+        }
+    }
 
+    /**
+     * Reads the state of the master from a checkpoint, see writeState(). Adds
+     * the boards to the given list, and returns whether they came from a
+     * batch file.
+     */
+    private boolean resume(Checkpoint from, List<Board> boards) throws Exception {
+        DataInputStream in = from.read();
+        boolean batch = in.readBoolean();
+        wholeBoards = in.readBoolean();
+        if (in.readBoolean() != usePaths)
+            throw new Exception("the checkpoint was written " + (usePaths ? "without" : "with") + " --paths");
+        int round = in.readInt();
+
+        long now = System.currentTimeMillis();
+        results = new BoardResult[in.readInt()];
+        for (int n = 0; n < results.length; n++) {
+            boards.add(Board.read(in, from.fileName()));
+            boolean solved = in.readBoolean();
+            long solutionsNum = in.readLong();
+            long solutionsStep = in.readLong();
+            long elapsed = in.readLong();
+            byte[][] paths = readPaths(in);
+
+            // other boards are searched again from the start
+            BoardResult result = new BoardResult();
+            if (solved || n == round) {
+                result.solutionsNum = solutionsNum;
+                result.solutionsStep = solutionsStep;
+                addSolutionPaths(result, paths);
+                if (elapsed >= 0)
+                    result.startTime = now - elapsed;
+                if (solved)
+                    result.endTime = now;
+                else
+                    result.jobsLeft = 1; // not solved before its round is done
             }
+            results[n] = result;
+        }
+        if (round < 0)
+            return batch;
 
+        resumedBoard = round;
+        resumedBound = in.readInt();
+        resumedNextBound = in.readInt();
+        int size = in.readInt();
+        resumedJobs = new ArrayList<Job>(size);
+        resumedPending = new ArrayList<Job>();
+        for (int i = 0; i < size; i++) {
+            Board board = Board.read(in, from.fileName());
+            Job job = new Job(board, round, in.readInt());
+            job.weight = in.readLong();
+            job.nodes = in.readLong();
+            if (in.readBoolean())
+                resumedPending.add(job);
+            job.paths = readPaths(in);
+            resumedJobs.add(job);
+        }
+        if (resumedPending.isEmpty()) {
+            // the round was over, without solutions
+            resumedPending = null;
+            resumedBound = resumedNextBound;
+            resumedNextBound = Integer.MAX_VALUE;
         }
+        return batch;
     }
 
-    public void masterNode(Board initState, boolean useCache) throws Exception {
+    private static void writePaths(DataOutputStream out, byte[][] paths) throws IOException {
+        if (paths == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(paths.length);
+        for (byte[] path : paths) {
+            out.writeShort(path.length);
+            out.write(path);
+        }
+    }
+
+    private static byte[][] readPaths(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        byte[][] result = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            result[i] = new byte[in.readUnsignedShort()];
+            in.readFully(result[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the master: hands out the jobs of all boards and collects their
+     * results. Meanwhile, the master searches jobs itself with one thread
+     * per engine.
+     */
+    public void masterNode(List<Board> boards, boolean batch, Engine[] engines) throws Exception {
         // Master Node should provide with jobs
         ReceivePort receiver = myIbis.createReceivePort(requestPortType,
                 "server", this);
+        frontiers = new Frontier[boards.size()];
+        masterJobsList = new ArrayList<Job[]>();
+        workers = new Workers<Job[]>(myIbis, replyPortType) {
+            boolean hasWork() {
+                return masterJobsList.size() > 0;
+            }
+
+            boolean noMoreWork() {
+                // until then, the next board or round is not split yet
+                return allBoardsDone;
+            }
+
+            MessageObject nextWork(IbisIdentifier worker) {
+                return nextJob(worker, false);
+            }
 
+            void putBack(Job[] jobs) {
+                masterJobsList.add(0, jobs);
+            }
+        };
+        if (results == null) {
+            // not resumed from a checkpoint
+            results = new BoardResult[boards.size()];
+            for (int n = 0; n < results.length; n++)
+                results[n] = new BoardResult();
+        }
+
+        // enable connections
+        receiver.enableConnections();
+        // enable upcalls
+        receiver.enableMessageUpcalls();
+        myIbis.registry().enableEvents();
+
+        Thread[] threads = new Thread[engines.length];
+        for (int t = 0; t < threads.length; t++) {
+            final Engine engine = engines[t];
+            threads[t] = new Thread("master search thread " + t) {
+                public void run() {
+                    try {
+                        searchMasterJobs(engine);
+                    } catch (Exception e) {
+                        throw new Error("search thread failed", e);
+                    }
+                }
+            };
+            // upcalls go first, workers should never wait for the master
+            threads[t].setPriority(Thread.MIN_PRIORITY);
+            threads[t].start();
+        }
         synchronized (jobListBusy){
-            // enable connections
-            receiver.enableConnections();
-            // enable upcalls
-            receiver.enableMessageUpcalls();
-            masterJobsList = getjobs(initState, useCache);
-            jobCounter = masterJobsList.size();
-            startTime = System.currentTimeMillis();
-            while(masterJobsList.size() > 0)
-                jobListBusy.wait();
+            masterThreads = threads.length;
+        }
+        if (checkpoint != null) {
+            // copies, as whole board jobs search the boards themselves
+            checkpointBoards = new ArrayList<Board>();
+            for (Board board : boards)
+                checkpointBoards.add(new Board(board));
+            startCheckpoints(batch);
+        }
+
+        if (wholeBoards) {
+            // one job per board, hand out the largest boards first
+            List<Job> jobs = new ArrayList<Job>();
+            for (int n = 0; n < boards.size(); n++) {
+                if (!results[n].solved())
+                    jobs.add(wholeJob(boards.get(n), n));
+            }
+            Collections.sort(jobs, new Comparator<Job>() {
+                public int compare(Job a, Job b) {
+                    return b.board.distance() - a.board.distance();
+                }
+            });
+            synchronized (jobListBusy){
+                for (Job job : jobs)
+                    masterJobsList.add(new Job[] { job });
+                jobCounter = jobs.size();
+                for (Job job : jobs)
+                    results[job.boardId].jobsLeft = 1;
+                workers.serveWaiting();
+                jobListBusy.notifyAll();
+                while(jobCounter > 0)
+                    jobListBusy.wait();
+            }
+            for (int n = 0; n < boards.size(); n++)
+                printResult(n, batch);
+        } else {
+            for (int n = 0; n < boards.size(); n++) {
+                if (results[n].solved()) {
+                    // done before the checkpoint resumed from
+                    printResult(n, batch);
+                    continue;
+                }
+                // the same jobs are searched with every bound, the boards
+                // they visited in one round tell how to split them up for
+                // the next
+                List<Job> jobs;
+                List<Job> pending = null;
+                int bound;
+                // jobs answered before the checkpoint count for the next bound
+                int nextBound = Integer.MAX_VALUE;
+                if (n == resumedBoard) {
+                    jobs = resumedJobs;
+                    pending = resumedPending;
+                    bound = resumedBound;
+                    nextBound = resumedNextBound;
+                } else {
+                    jobs = getjobs(boards.get(n), n);
+                    bound = boards.get(n).distance();
+                }
+                Progress report = report(n);
+                if (!batch)
+                    System.out.print("Try bound ");
+                do {
+                    long start = System.currentTimeMillis();
+                    if (!batch) {
+                        System.out.print(bound + " ");
+                        System.out.flush();
+                    }
+                    if (pending == null) {
+                        jobs = splitJobs(jobs);
+                        pending = jobs;
+                    }
+                    List<Job[]> messages = groupJobs(pending);
+                    pending = null;
+                    synchronized (jobListBusy){
+                        // the jobs kept from the last round are still part of
+                        // it for a checkpoint until roundJobs is replaced
+                        for (int i = 0; i < jobs.size(); i++)
+                            jobs.get(i).id = i;
+                        roundJobs = jobs;
+                        roundBound = bound;
+                        results[n].nextBound = nextBound;
+                        masterJobsList.addAll(messages);
+                        jobCounter = messages.size();
+                        results[n].jobsLeft = jobCounter;
+                        workers.serveWaiting();
+                        jobListBusy.notifyAll();
+                        while(jobCounter > 0)
+                            jobListBusy.wait();
+                    }
+                    if (report != null) {
+                        long nodes = 0;
+                        synchronized (jobListBusy){
+                            for (Job job : roundJobs)
+                                nodes += job.nodes;
+                        }
+                        report.bound(bound, System.currentTimeMillis() - start, nodes, results[n].solutionsNum);
+                    }
+                    // bounds no job reaches further with are skipped
+                    bound = results[n].nextBound;
+                    nextBound = Integer.MAX_VALUE;
+                } while (results[n].solutionsNum == 0 && bound != Integer.MAX_VALUE);
+                if (!batch)
+                    System.out.println();
+                printResult(n, batch);
+            }
         }
-        System.err.println("Job is done. Solutions number = " + solutionsNum + "; Time spent on task is " + (endTime - startTime));
 
+        if (checkpoint != null)
+            saveCheckpoint(batch);
+        synchronized (jobListBusy){
+            allBoardsDone = true;
+            jobListBusy.notifyAll();
+            workers.terminateAll();
+            workers.awaitLeaving(jobListBusy);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        // workers that join from now on, or missed the end, stop right away
+        myIbis.registry().terminate();
+    }
+
+    /**
+     * Body of a search thread of the master: solves jobs from the end of the
+     * job list, the smallest ones, leaving the larger ones at the front to the
+     * workers. Returns once all boards are done.
+     */
+    private void searchMasterJobs(Engine engine) throws Exception {
+        while (true) {
+            MessageObject job;
+            synchronized (jobListBusy){
+                while (masterJobsList.isEmpty() && !allBoardsDone)
+                    jobListBusy.wait();
+                if (masterJobsList.isEmpty())
+                    return;
+                job = nextJob(myIbis.identifier(), true);
+            }
+            MessageObject result = solveJob(job, engine, null);
+            synchronized (jobListBusy){
+                addResult(result);
+            }
+        }
     }
 
 
-    public void slaveNode(IbisIdentifier masterNode, boolean useCache) throws Exception{
-        SendPort sendPort = myIbis.createSendPort(requestPortType);
-        sendPort.connect(masterNode, "server");
+    /**
+     * Runs a worker node: one search thread per engine, taking jobs from a
+     * local queue. This thread asks the master for the jobs, always keeping
+     * one job ahead of the search threads, so a thread finishing a job does
+     * not wait for the master. The messages to the master, job requests and
+     * results, go through a bounded outbox sent by a communication thread, so
+     * the search threads never wait for the network either.
+     */
+    public void slaveNode(IbisIdentifier masterNode, Engine[] engines) throws Exception{
+        final SendPort sendPort = myIbis.createSendPort(requestPortType);
+        try {
+            sendPort.connect(masterNode, "server");
+        } catch (ConnectionFailedException e) {
+            // joined after the master was done
+            if (!poolTerminated())
+                throw e;
+            System.err.println("the pool has terminated already");
+            sendPort.close();
+            return;
+        }
         ReceivePort receivePort = myIbis.createReceivePort(replyPortType, null);
         receivePort.enableConnections();
-        WriteMessage request = sendPort.newMessage();
-        MessageObject jobRequest = new MessageObject();
-        jobRequest.messageType = MessageObject.message_id.JOB_STEALING;
-        jobRequest.requestor = receivePort.identifier();
-        request.writeObject(jobRequest);
-        request.finish();
-        MessageObject localSolutionResult = new MessageObject();
-        localSolutionResult.messageType = MessageObject.message_id.SOLUTIONS_NUM;
-        localSolutionResult.requestor = receivePort.identifier();
-        ReadMessage reply = receivePort.receive();
-        MessageObject job = (MessageObject)reply.readObject();
-        reply.finish();
-        while(job.messageType == MessageObject.message_id.JOB_BOARD){
-            if(job.data == null){
-                sendPort.close();
-                receivePort.close();
-                return;
-            }
-	        Board initState = (Board)job.data;
-            solutionsStep = job.maximumBound;
-            Pair<Integer, Integer> res = solve(initState,useCache);
-            System.out.println("SLAVE NODE  SOLVED ONE "  + res.getKey() + " :: " + res.getValue());
-            localSolutionResult.data = res;
-            request = sendPort.newMessage();
-            request.writeObject(localSolutionResult);
-            request.finish();
+        final ReceivePortIdentifier identifier = receivePort.identifier();
 
-            request = sendPort.newMessage();
-            request.writeObject(jobRequest);
-            request.finish();
-            reply = receivePort.receive();
-            job = (MessageObject)reply.readObject();
-            reply.finish();
+        outboxSize = OUTBOX_PER_THREAD * engines.length + 1;
+        Thread sender = new Thread("communication thread") {
+            public void run() {
+                try {
+                    sendMessages(sendPort);
+                } catch (Exception e) {
+                    throw new Error("communication thread failed", e);
+                }
+            }
+        };
+        sender.start();
+        Thread[] threads = new Thread[engines.length];
+        for (int t = 0; t < threads.length; t++) {
+            final Engine engine = engines[t];
+            threads[t] = new Thread("search thread " + t) {
+                public void run() {
+                    try {
+                        searchJobs(engine, identifier);
+                    } catch (Exception e) {
+                        throw new Error("search thread failed", e);
+                    }
+                }
+            };
+            threads[t].start();
         }
+        leaveOnShutdown(identifier, threads, sender);
 
+        MessageObject job;
+        do {
+            MessageObject jobRequest = new MessageObject();
+            jobRequest.messageType = MessageObject.message_id.JOB_STEALING;
+            jobRequest.requestor = identifier;
+            jobRequest.data = engines.length;
+            synchronized (localJobs) {
+                // once leaving, the shutdown hook ends this node
+                while (localJobs.size() > idleThreads || leaving)
+                    localJobs.wait();
+                jobRequest.results = takeUnsent(identifier);
+                requestWaiting = true;
+            }
+            post(jobRequest);
+            job = receiveReply(receivePort);
+            synchronized (localJobs) {
+                requestWaiting = false;
+                localJobs.add(job);
+                localJobs.notifyAll();
+            }
+        } while (job.messageType != MessageObject.message_id.TERMINATE);
+
+        for (Thread thread : threads)
+            thread.join();
+        postUnsent(identifier);
+        post(null);
+        sender.join();
         sendPort.close();
         receivePort.close();
     }
 
-    private List<Board> getjobs(Board boardState, boolean useCache){
-
-        return useCache? __getjobs(boardState, MAXHOPS, new BoardCache()) : __getjobs(boardState, MAXHOPS, null);
+    /**
+     * Queues a message for the master, waiting while the outbox is full.
+     */
+    private void post(MessageObject message) throws InterruptedException {
+        synchronized (outbox) {
+            while (outbox.size() >= outboxSize)
+                outbox.wait();
+            outbox.add(message);
+            outbox.notifyAll();
+        }
     }
 
-    private List<Board> __getjobs(Board boardState, int deepLevel, BoardCache cache){
-        ArrayList<Board> result = new ArrayList<Board>();
-        boardState.setBound(boardState.distance());
-        if(deepLevel == 0){
-            Board[] children;
-            if(cache == null)
-                 children = boardState.makeMoves();
-            else
-                children = boardState.makeMoves(cache);
+    /**
+     * Body of the communication thread of a worker node: sends the messages
+     * in the outbox to the master in order, until it finds null.
+     */
+    private void sendMessages(SendPort sendPort) throws Exception {
+        while (true) {
+            MessageObject message;
+            synchronized (outbox) {
+                while (outbox.isEmpty())
+                    outbox.wait();
+                message = outbox.remove(0);
+                outbox.notifyAll();
+            }
+            if (message == null)
+                return;
+            send(sendPort, message);
+        }
+    }
 
-            for (int i = 0; i < children.length; i++) {
-                if (children[i] != null) {
-                    result.add(children[i]);
-                    children[i].dropParams();
+    /**
+     * Waits for the reply to a job request. If the pool is terminated without
+     * one, as the master did not wait for this node, returns a TERMINATE
+     * message as well.
+     */
+    MessageObject receiveReply(ReceivePort receivePort) throws Exception {
+        while (true) {
+            try {
+                ReadMessage reply = receivePort.receive(TERMINATION_POLL);
+                MessageObject result = (MessageObject) reply.readObject();
+                reply.finish();
+                return result;
+            } catch (ReceiveTimedOutException e) {
+                if (myIbis.registry().hasTerminated()) {
+                    MessageObject result = new MessageObject();
+                    result.messageType = MessageObject.message_id.TERMINATE;
+                    return result;
                 }
             }
+        }
+    }
+
+    /**
+     * Returns whether the pool is terminated, waiting up to
+     * TERMINATION_TIMEOUT milliseconds for the registry to tell.
+     */
+    private boolean poolTerminated() throws InterruptedException {
+        for (int waited = 0; !myIbis.registry().hasTerminated(); waited += TERMINATION_POLL) {
+            if (waited >= TERMINATION_TIMEOUT)
+                return false;
+            Thread.sleep(TERMINATION_POLL);
+        }
+        return true;
+    }
+
+    /**
+     * Body of a search thread of a worker node: solves jobs from the local
+     * queue and queues their results for the master, until it finds the
+     * TERMINATE message telling there are no more jobs. That message is left
+     * in the queue for the other threads.
+     */
+    private void searchJobs(Engine engine, ReceivePortIdentifier identifier) throws Exception {
+        while (true) {
+            MessageObject job;
+            synchronized (localJobs) {
+                idleThreads++;
+                localJobs.notifyAll();
+                while (localJobs.isEmpty() && !leaving)
+                    localJobs.wait();
+                if (leaving)
+                    return;
+                job = localJobs.get(0);
+                if (job.messageType == MessageObject.message_id.TERMINATE)
+                    return;
+                localJobs.remove(0);
+                idleThreads--;
+            }
+
+            addUnsent(solveJob(job, engine, identifier), identifier);
+        }
+    }
+
+    /**
+     * Adds the result of a job message to the results not sent yet. Results
+     * of the same board and bound are added up, to go to the master along
+     * with the next job request; while a request waits for its reply there
+     * may be no next one this round, so they are sent right away instead.
+     */
+    private void addUnsent(MessageObject result, ReceivePortIdentifier identifier) throws InterruptedException {
+        MessageObject previous = null;
+        MessageObject now = null;
+        synchronized (localJobs) {
+            if (unsent != null && !unsent.matches(result))
+                previous = takeUnsent(identifier);
+            if (unsent == null)
+                unsent = new ResultSum(result);
+            else
+                unsent.add(result);
+            if (requestWaiting)
+                now = takeUnsent(identifier);
+        }
+        if (previous != null)
+            post(previous);
+        if (now != null)
+            post(now);
+    }
+
+    /**
+     * Returns the results not sent yet as one message, null if there are
+     * none. Should be called with the localJobs lock held.
+     */
+    private MessageObject takeUnsent(ReceivePortIdentifier identifier) {
+        if (unsent == null)
+            return null;
+        MessageObject result = unsent.message(identifier);
+        unsent = null;
+        return result;
+    }
+
+    private void postUnsent(ReceivePortIdentifier identifier) throws InterruptedException {
+        MessageObject results;
+        synchronized (localJobs) {
+            results = takeUnsent(identifier);
+        }
+        if (results != null)
+            post(results);
+    }
+
+    /**
+     * Solves the jobs of a JOB_BOARD or JOB_ROUND message, and returns the
+     * SOLUTIONS_NUM message with the result. Identifier is null for the search
+     * threads of the master and of sub-masters, which do not print the bounds
+     * they try: the output of the master is the results of the boards.
+     */
+    MessageObject solveJob(MessageObject job, Engine engine, ReceivePortIdentifier identifier) {
+        MessageObject result = new MessageObject();
+        result.messageType = MessageObject.message_id.SOLUTIONS_NUM;
+        result.requestor = identifier;
+        result.tickets = new long[] { job.ticket };
+        if (job.messageType == MessageObject.message_id.JOB_ROUND) {
+            solveRound((Job[]) job.data, (int) job.maximumBound, engine, result);
         } else {
-            Board[] children = boardState.makeMoves(cache);
-            for (int i = 0; i < children.length; i++) {
-                if (children[i] != null) {
-                    result.addAll(__getjobs(children[i], deepLevel - 1, cache));
+            Job initState = (Job)job.data;
+            // bounds are sent as steps from the board, the search works from the job
+            int maxBound = (int) (job.maximumBound - initState.depth);
+            List<byte[]> paths = usePaths ? new ArrayList<byte[]>() : null;
+            // split boards are only part of a search, not worth a report
+            Progress report = initState.depth == 0 ? report(initState.boardId) : null;
+            PrintStream bounds = identifier == null ? null : System.out;
+            long solutions = Search.solve(engine, initState.board, maxBound, paths, bounds, report);
+            result.solutions = solutions * initState.weight;
+            result.steps = initState.board.bound() + initState.depth;
+            if (usePaths)
+                result.paths = prependPaths(initState.paths, paths);
+            result.boardId = initState.boardId;
+        }
+        return result;
+    }
+
+    /**
+     * Makes a worker node that is stopped (SIGTERM, ^C) before all work is
+     * done leave the pool gracefully: the jobs it fetched but did not start
+     * are handed back to the master right away, the jobs being searched are
+     * finished. The master hands out any job still unanswered once this node
+     * has left.
+     */
+    private void leaveOnShutdown(final ReceivePortIdentifier identifier, final Thread[] threads,
+            final Thread sender) {
+        Runtime.getRuntime().addShutdownHook(new Thread("leave pool") {
+            public void run() {
+                if (workDone)
+                    return;
+                List<Long> tickets = new ArrayList<Long>();
+                synchronized (localJobs) {
+                    leaving = true;
+                    for (MessageObject job : localJobs) {
+                        if (job.messageType != MessageObject.message_id.TERMINATE)
+                            tickets.add(job.ticket);
+                    }
+                    localJobs.clear();
+                    localJobs.notifyAll();
+                }
+                System.err.println("leaving the pool, handing back " + tickets.size() + " job messages");
+                try {
+                    MessageObject jobReturn = new MessageObject();
+                    jobReturn.messageType = MessageObject.message_id.JOB_RETURN;
+                    jobReturn.requestor = identifier;
+                    long[] data = new long[tickets.size()];
+                    for (int i = 0; i < data.length; i++)
+                        data[i] = tickets.get(i);
+                    jobReturn.data = data;
+                    post(jobReturn);
+                    for (Thread thread : threads)
+                        thread.join();
+                    // the results of the jobs finished go out first
+                    postUnsent(identifier);
+                    post(null);
+                    sender.join();
+                    myIbis.end();
+                } catch (Exception e) {
+                    System.err.println("could not leave the pool gracefully: " + e);
                 }
             }
+        });
+    }
+
+    /**
+     * Sends a message to the master. The send port is shared by all threads
+     * of a worker node.
+     */
+    static void send(SendPort sendPort, MessageObject message) throws IOException {
+        synchronized (sendPort) {
+            WriteMessage request = sendPort.newMessage();
+            request.writeObject(message);
+            request.finish();
         }
+    }
+
+    /**
+     * Searches the jobs of one round with the given bound, in steps from the
+     * initial board, and fills in the result message: the total number of
+     * solutions, their paths with --paths, and the boards each job visited.
+     */
+    private void solveRound(Job[] jobs, int bound, Engine engine, MessageObject result) {
+        long solutions = 0;
+        List<byte[]> found = new ArrayList<byte[]>();
+        result.jobs = new int[jobs.length];
+        result.nodes = new long[jobs.length];
+        for (int i = 0; i < jobs.length; i++) {
+            Job job = jobs[i];
+            result.jobs[i] = job.id;
+            if (job.depth > bound) {
+                // not even reached, but may be a solution itself
+                result.nextBound = Math.min(result.nextBound, job.depth + job.board.distance());
+                continue;
+            }
+            // searched on a copy, on the master the job is still part of the
+            // round and of checkpoints
+            Board board = new Board(job.board);
+            board.setBound(bound - job.depth);
+            List<byte[]> paths = usePaths ? new ArrayList<byte[]>() : null;
+            long n = engine.solutions(board, paths);
+            solutions += n * job.weight;
+            if (usePaths && n > 0)
+                Collections.addAll(found, prependPaths(job.paths, paths));
+            result.nodes[i] = engine.nodes();
+            if (engine.nextBound() != Integer.MAX_VALUE)
+                result.nextBound = Math.min(result.nextBound, engine.nextBound() + job.depth);
+        }
+        result.solutions = solutions;
+        result.steps = bound;
+        result.paths = usePaths ? found.toArray(new byte[found.size()][]) : null;
+        result.boardId = jobs[0].boardId;
+    }
+
+    /**
+     * Returns the solutions of a job as complete paths from the initial board,
+     * one for every path leading to the job.
+     */
+    private static byte[][] prependPaths(byte[][] prefixes, List<byte[]> paths) {
+        byte[][] result = new byte[prefixes.length * paths.size()][];
+        int n = 0;
+        for (byte[] prefix : prefixes) {
+            for (byte[] path : paths) {
+                result[n] = new byte[prefix.length + path.length];
+                System.arraycopy(prefix, 0, result[n], 0, prefix.length);
+                System.arraycopy(path, 0, result[n], prefix.length, path.length);
+                n++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a job containing the whole board.
+     */
+    private Job wholeJob(Board board, int boardId) {
+        Job job = new Job(board, boardId, 0);
+        if (usePaths)
+            job.paths = new byte[][] { new byte[0] };
+        return job;
+    }
+
+    /**
+     * Returns the jobs of a board: the states of its frontier. The frontier
+     * is generated on first use and kept for later calls.
+     */
+    private List<Job> getjobs(Board board, int boardId) {
+        if (frontiers[boardId] == null)
+            frontiers[boardId] = new Frontier(board, frontierDepth, usePaths);
+        Frontier frontier = frontiers[boardId];
+
+        List<Job> result = new ArrayList<Job>(frontier.size());
+        for (int i = 0; i < frontier.size(); i++) {
+            Job job = new Job(frontier.board(i), boardId, frontier.depth(i));
+            job.weight = frontier.weight(i);
+            job.paths = frontier.paths(i);
+            result.add(job);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the jobs that visited many more boards than their share in the
+     * last round into their children, a few levels deep for the worst ones.
+     * As a tree grows by about the same factor for every bound, these are
+     * the jobs that would dominate the next round too. The children start
+     * with an equal part of the boards of their parent.
+     */
+    private List<Job> splitJobs(List<Job> jobs) {
+        long share = totalNodes(jobs) / messagesPerRound();
+        if (share == 0)
+            return jobs;
+        List<Job> result = new ArrayList<Job>(jobs.size());
+        for (Job job : jobs) {
+            if (job.nodes <= SPLIT_FACTOR * share || job.board.distance() == 0) {
+                result.add(job);
+                continue;
+            }
+            // every level about doubles the number of jobs
+            int levels = 1;
+            while (levels < MAX_SPLIT && (job.nodes >> levels) > SPLIT_FACTOR * share)
+                levels++;
+            result.addAll(childJobs(job, levels));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the jobs the given levels below a job. The children start with
+     * an equal part of the boards of their parent.
+     */
+    private List<Job> childJobs(Job job, int levels) {
+        Frontier frontier = new Frontier(job.board, levels, usePaths);
+        List<Job> result = new ArrayList<Job>(frontier.size());
+        for (int i = 0; i < frontier.size(); i++) {
+            Job child = new Job(frontier.board(i), job.boardId, job.depth + frontier.depth(i));
+            child.weight = job.weight * frontier.weight(i);
+            if (usePaths)
+                child.paths = prependPaths(job.paths, Arrays.asList(frontier.paths(i)));
+            child.nodes = job.nodes / frontier.size();
+            result.add(child);
+        }
+        return result;
+    }
+
+    /**
+     * Breaks up the job messages still waiting in the current round until
+     * there are at least the given number, so a worker that just joined
+     * gets a share of the round too. The largest messages are halved first,
+     * then single jobs are replaced by their children. Should be called with
+     * the jobListBusy lock held.
+     */
+    private void resplitRound(int wanted) {
+        while (masterJobsList.size() < wanted) {
+            int largest = -1;
+            for (int i = 0; i < masterJobsList.size(); i++) {
+                if (masterJobsList.get(i).length > 1
+                        && (largest < 0 || masterJobsList.get(i).length > masterJobsList.get(largest).length))
+                    largest = i;
+            }
+            if (largest >= 0) {
+                Job[] jobs = masterJobsList.get(largest);
+                masterJobsList.set(largest, Arrays.copyOfRange(jobs, 0, jobs.length / 2));
+                masterJobsList.add(largest + 1, Arrays.copyOfRange(jobs, jobs.length / 2, jobs.length));
+                jobCounter++;
+                results[jobs[0].boardId].jobsLeft++;
+                continue;
+            }
+
+            int single = -1;
+            for (int i = 0; i < masterJobsList.size() && single < 0; i++) {
+                Job job = masterJobsList.get(i)[0];
+                if (job.board.distance() > 0 && job.depth < roundBound)
+                    single = i;
+            }
+            if (single < 0)
+                return;
+            Job job = masterJobsList.get(single)[0];
+            List<Job> children = childJobs(job, 1);
+            // the children take the place of their parent in the round
+            children.get(0).id = job.id;
+            roundJobs.set(job.id, children.get(0));
+            for (int i = 1; i < children.size(); i++) {
+                children.get(i).id = roundJobs.size();
+                roundJobs.add(children.get(i));
+            }
+            masterJobsList.set(single, children.toArray(new Job[children.size()]));
+            if (children.size() == 1)
+                return;
+        }
+    }
+
+    /**
+     * Groups the jobs of a round still to search (all of them, unless resumed
+     * from a checkpoint) into messages of about an equal number of boards
+     * visited in the last round, largest first. In the first round every
+     * message gets the same number of jobs.
+     */
+    private List<Job[]> groupJobs(List<Job> jobs) {
+        int messages = messagesPerRound();
+        long share = totalNodes(jobs) / messages;
+        List<Job[]> result = new ArrayList<Job[]>();
+        if (share == 0) {
+            int size = (jobs.size() + messages - 1) / messages;
+            for (int i = 0; i < jobs.size(); i += size)
+                result.add(jobs.subList(i, Math.min(i + size, jobs.size())).toArray(new Job[0]));
+            return result;
+        }
+
+        List<Job> sorted = new ArrayList<Job>(jobs);
+        Collections.sort(sorted, new Comparator<Job>() {
+            public int compare(Job a, Job b) {
+                return a.nodes < b.nodes ? 1 : a.nodes > b.nodes ? -1 : 0;
+            }
+        });
+        List<Job> message = new ArrayList<Job>();
+        long nodes = 0;
+        for (Job job : sorted) {
+            message.add(job);
+            nodes += job.nodes;
+            if (nodes >= share) {
+                result.add(message.toArray(new Job[message.size()]));
+                message.clear();
+                nodes = 0;
+            }
+        }
+        if (message.size() > 0)
+            result.add(message.toArray(new Job[message.size()]));
+        return result;
+    }
+
+    private int messagesPerRound() {
+        synchronized (jobListBusy) {
+            int threads = masterThreads + workers.threads();
+            return Math.max(1, threads) * JOBS_PER_THREAD;
+        }
+    }
+
+    private static long totalNodes(List<Job> jobs) {
+        long result = 0;
+        for (Job job : jobs)
+            result += job.nodes;
         return result;
     }
 
@@ -0,0 +1,31 @@
+package ida.ipl;
+
+import ida.core.Board;
+
+import java.io.Serializable;
+
+/**
+ * Class which represents one job handed out by the master: a subtree of one
+ * of the boards being solved, or a whole board.
+ */
+public class Job implements Serializable {
+    private static final long serialVersionUID = 6597471653740335692L;
+
+    public Board board;
+    public int boardId; // index of the board this job belongs to
+    public int depth; // number of moves between the board and this job
+    public long weight = 1; // number of paths from the board reaching this job
+    public byte[][] paths = null; // the weight paths leading to this job, only with --paths
+    public int id; // index of the job in its round
+    public long nodes = 0; // boards visited by this job in the last round
+
+    public Job(Board board, int boardId, int depth) {
+        this.board = board;
+        this.boardId = boardId;
+        this.depth = depth;
+    }
+
+    public String toString() {
+        return "Job{board: " + boardId + "; depth: " + depth + "; weight: " + weight + ";}";
+    }
+}
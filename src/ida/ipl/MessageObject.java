@@ -13,12 +13,22 @@ import static ida.ipl.MessageObject.message_id.*;
  * Can possibly contain Job stealing request or returning value from one job execution
  */
 public class MessageObject implements Serializable{
-   enum message_id{ JOB_STEALING, SOLUTIONS_NUM, JOB_BOARD, EMPTY_MESSAGE};
+   enum message_id{ JOB_STEALING, SOLUTIONS_NUM, JOB_BOARD, JOB_ROUND, JOB_RETURN, TERMINATE, EMPTY_MESSAGE};
 
    public message_id messageType = EMPTY_MESSAGE; // by default
    public Serializable data = null; // by default
    public ReceivePortIdentifier requestor;
    public long maximumBound;
+   public int boardId; // board a SOLUTIONS_NUM belongs to
+   public long solutions; // number of solutions of a SOLUTIONS_NUM
+   public int steps; // their length in moves, or the bound searched if there are none
+   public int nextBound = Integer.MAX_VALUE; // least bound past steps that searches more boards, of a JOB_ROUND
+   public long ticket; // number of a job message
+   public long[] tickets = null; // job messages a SOLUTIONS_NUM answers
+   public MessageObject results = null; // SOLUTIONS_NUM sent along with a JOB_STEALING
+   public byte[][] paths = null; // solutions of a SOLUTIONS_NUM, only with --paths
+   public int[] jobs = null; // ids of the jobs of a JOB_ROUND, in its SOLUTIONS_NUM
+   public long[] nodes = null; // boards visited for each of those jobs
 
    public String toString(){
       StringBuilder res = new StringBuilder();
@@ -27,8 +37,16 @@ public class MessageObject implements Serializable{
          res.append("JOB_STEALING");
       else if(messageType == JOB_BOARD)
          res.append("JOB_BOARD");
+      else if(messageType == JOB_ROUND)
+         res.append("JOB_ROUND");
+      else if(messageType == JOB_RETURN)
+         res.append("JOB_RETURN");
+      else if(messageType == TERMINATE)
+         res.append("TERMINATE");
       else
          res.append("SOLUTIONS_NUM");
+      if(messageType == SOLUTIONS_NUM)
+         res.append("; solutions: " + solutions + "; steps: " + steps);
       res.append("; data:");
       
 	if(data != null)
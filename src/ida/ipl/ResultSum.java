@@ -0,0 +1,101 @@
+package ida.ipl;
+
+import ibis.ipl.ReceivePortIdentifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of job messages of the same board and bound (or solution length,
+ * for whole boards), added up into one SOLUTIONS_NUM message answering the
+ * tickets of all of them. Worker nodes send the results they have along
+ * with their next job request this way, and sub-masters add up the results
+ * of their group.
+ */
+final class ResultSum {
+    private final int boardId;
+    private final int steps;
+    private long solutions = 0;
+    private int nextBound = Integer.MAX_VALUE;
+    private List<byte[]> paths = null;
+    private final List<Long> tickets = new ArrayList<Long>();
+    // ids and boards visited of the jobs of JOB_ROUND messages
+    private final List<int[]> jobs = new ArrayList<int[]>();
+    private final List<long[]> nodes = new ArrayList<long[]>();
+
+    ResultSum(MessageObject result) {
+        boardId = result.boardId;
+        steps = result.steps;
+        add(result);
+    }
+
+    /**
+     * Returns true if the given result can be added to this sum.
+     */
+    boolean matches(MessageObject result) {
+        return result.boardId == boardId && result.steps == steps;
+    }
+
+    /**
+     * Returns true if the given sum can be added to this one.
+     */
+    boolean matches(ResultSum other) {
+        return other.boardId == boardId && other.steps == steps;
+    }
+
+    void add(MessageObject result) {
+        solutions += result.solutions;
+        nextBound = Math.min(nextBound, result.nextBound);
+        if (result.paths != null) {
+            if (paths == null)
+                paths = new ArrayList<byte[]>();
+            Collections.addAll(paths, result.paths);
+        }
+        for (long ticket : result.tickets)
+            tickets.add(ticket);
+        if (result.jobs != null) {
+            jobs.add(result.jobs);
+            nodes.add(result.nodes);
+        }
+    }
+
+    /**
+     * Adds another sum of the same board and bound to this one.
+     */
+    void add(ResultSum other) {
+        add(other.message(null));
+    }
+
+    /**
+     * Returns the SOLUTIONS_NUM message with this sum.
+     */
+    MessageObject message(ReceivePortIdentifier requestor) {
+        MessageObject result = new MessageObject();
+        result.messageType = MessageObject.message_id.SOLUTIONS_NUM;
+        result.requestor = requestor;
+        result.boardId = boardId;
+        result.solutions = solutions;
+        result.steps = steps;
+        result.nextBound = nextBound;
+        if (paths != null)
+            result.paths = paths.toArray(new byte[paths.size()][]);
+        result.tickets = new long[tickets.size()];
+        for (int i = 0; i < result.tickets.length; i++)
+            result.tickets[i] = tickets.get(i);
+        if (!jobs.isEmpty()) {
+            int size = 0;
+            for (int[] part : jobs)
+                size += part.length;
+            result.jobs = new int[size];
+            result.nodes = new long[size];
+            int filled = 0;
+            for (int i = 0; i < jobs.size(); i++) {
+                System.arraycopy(jobs.get(i), 0, result.jobs, filled, jobs.get(i).length);
+                System.arraycopy(nodes.get(i), 0, result.nodes, filled, nodes.get(i).length);
+                filled += jobs.get(i).length;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,375 @@
+package ida.ipl;
+
+import ibis.ipl.*;
+import ida.core.Engine;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sub-master of a group of worker nodes (see --group). It serves the job
+ * requests of the workers in its group the same way the master does, with
+ * jobs it pulls from the master a whole message at a time. Every job of such
+ * a message goes out to the group as a part of its own. The results of the
+ * parts are added up, and once the group has no part of their board left,
+ * sent to the master as one result for all messages of the board and bound
+ * it pulled, so the master only sees the traffic of its sub-masters. The sub-master
+ * searches parts itself too, with one thread per engine.
+ */
+final class SubMaster implements MessageUpcall {
+
+    /**
+     * Result of one or more messages of the master, added up from the results
+     * of their parts. A worker adds up the results of parts it searched for
+     * different messages (see ResultSum), and then the sums of those messages
+     * are merged, to go to the master as one result. Sums of messages that
+     * are done are merged too, until the group is done with their board.
+     */
+    private static final class Sum {
+        final List<Long> tickets = new ArrayList<Long>(); // of the messages of the master
+        int partsLeft;
+        ResultSum results = null;
+
+        Sum(long ticket, int parts) {
+            tickets.add(ticket);
+            partsLeft = parts;
+        }
+
+        void add(MessageObject result) {
+            if (results == null)
+                results = new ResultSum(result);
+            else
+                results.add(result);
+        }
+
+        void merge(Sum other) {
+            tickets.addAll(other.tickets);
+            partsLeft += other.partsLeft;
+            if (results == null)
+                results = other.results;
+            else if (other.results != null)
+                results.add(other.results);
+        }
+
+        MessageObject result(ReceivePortIdentifier requestor) {
+            MessageObject result = results.message(requestor);
+            result.tickets = new long[tickets.size()];
+            for (int i = 0; i < result.tickets.length; i++)
+                result.tickets[i] = tickets.get(i);
+            return result;
+        }
+    }
+
+    /**
+     * One job of a message of the master, handed out as a message of its own
+     */
+    private static final class Part {
+        Sum sum;
+        final MessageObject.message_id messageType;
+        final Serializable data;
+        final long maximumBound;
+        final int boardId;
+
+        Part(Sum sum, MessageObject job, Job part) {
+            this.sum = sum;
+            messageType = job.messageType;
+            if (messageType == MessageObject.message_id.JOB_ROUND)
+                data = new Job[] { part };
+            else
+                data = part;
+            maximumBound = job.maximumBound;
+            boardId = part.boardId;
+        }
+    }
+
+    private final Ida ida;
+    private final Ibis myIbis;
+    private final IbisIdentifier master;
+    private final Engine[] engines;
+
+    // requests and results go to the master through this port
+    private SendPort masterPort;
+    // and its replies come in through this one
+    private ReceivePort masterReplies;
+
+    // parts still to hand out, the larger ones first
+    private final List<Part> parts = new ArrayList<Part>();
+    // workers of the group, and the parts handed out to them
+    private final Workers<Part> workers;
+    // set once the master has no more work
+    private boolean masterDone = false;
+    // messages of the master that are done, of one board and bound, until
+    // the group has nothing of their board left
+    private Sum finished = null;
+
+    SubMaster(Ida ida, Ibis myIbis, IbisIdentifier master, Engine[] engines) {
+        this.ida = ida;
+        this.myIbis = myIbis;
+        this.master = master;
+        this.engines = engines;
+        workers = new Workers<Part>(myIbis, ida.replyPortType) {
+            boolean hasWork() {
+                return !parts.isEmpty();
+            }
+
+            boolean noMoreWork() {
+                return masterDone;
+            }
+
+            MessageObject nextWork(IbisIdentifier worker) {
+                return partMessage(parts.remove(0), worker);
+            }
+
+            void putBack(Part part) {
+                parts.add(0, part);
+            }
+        };
+    }
+
+    /**
+     * Runs the sub-master until the master has no more work and the workers
+     * of the group are told so. This thread pulls the messages of the master,
+     * keeping a part ready for every search thread of the group.
+     */
+    void run() throws Exception {
+        ReceivePort receiver = myIbis.createReceivePort(ida.requestPortType, "server", this);
+        receiver.enableConnections();
+        receiver.enableMessageUpcalls();
+        myIbis.registry().enableEvents();
+
+        masterPort = myIbis.createSendPort(ida.requestPortType);
+        masterPort.connect(master, "server");
+        masterReplies = myIbis.createReceivePort(ida.replyPortType, null);
+        masterReplies.enableConnections();
+        MessageObject request = new MessageObject();
+        request.messageType = MessageObject.message_id.JOB_STEALING;
+        request.requestor = masterReplies.identifier();
+
+        Thread[] threads = new Thread[engines.length];
+        for (int t = 0; t < threads.length; t++) {
+            final Engine engine = engines[t];
+            threads[t] = new Thread("sub-master search thread " + t) {
+                public void run() {
+                    try {
+                        searchParts(engine);
+                    } catch (Exception e) {
+                        throw new Error("search thread failed", e);
+                    }
+                }
+            };
+            // upcalls go first, workers should never wait for the sub-master
+            threads[t].setPriority(Thread.MIN_PRIORITY);
+            threads[t].start();
+        }
+
+        while (true) {
+            synchronized (this) {
+                while (parts.size() >= threads())
+                    wait();
+                // the master sizes its messages to the whole group
+                request.data = threads();
+            }
+            Ida.send(masterPort, request);
+            MessageObject job = ida.receiveReply(masterReplies);
+            synchronized (this) {
+                if (job.messageType == MessageObject.message_id.TERMINATE) {
+                    masterDone = true;
+                    break;
+                }
+                addParts(job);
+                workers.serveWaiting();
+                notifyAll();
+            }
+        }
+
+        synchronized (this) {
+            notifyAll();
+            workers.terminateAll();
+            workers.awaitLeaving(this);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        masterPort.close();
+        masterReplies.close();
+    }
+
+    /**
+     * Search threads in the group, including the ones of this node. Should
+     * be called with the lock of this sub-master held.
+     */
+    private int threads() {
+        return engines.length + workers.threads();
+    }
+
+    /**
+     * Splits a message of the master into parts, one per job. Should be
+     * called with the lock of this sub-master held.
+     */
+    private void addParts(MessageObject job) {
+        if (job.messageType == MessageObject.message_id.JOB_ROUND) {
+            Job[] jobs = (Job[]) job.data;
+            Sum sum = new Sum(job.ticket, jobs.length);
+            for (Job part : jobs)
+                parts.add(new Part(sum, job, part));
+        } else {
+            parts.add(new Part(new Sum(job.ticket, 1), job, (Job) job.data));
+        }
+    }
+
+    /**
+     * Returns the message handing out a part to the given worker. Should be
+     * called with the lock of this sub-master held.
+     */
+    private MessageObject partMessage(Part part, IbisIdentifier worker) {
+        MessageObject result = new MessageObject();
+        result.messageType = part.messageType;
+        result.data = part.data;
+        result.maximumBound = part.maximumBound;
+        result.ticket = workers.handOut(part, worker);
+        return result;
+    }
+
+    /**
+     * Body of a search thread of the sub-master: solves parts from the end of
+     * the list, leaving the larger ones at the front to the workers.
+     */
+    private void searchParts(Engine engine) throws Exception {
+        while (true) {
+            MessageObject job;
+            synchronized (this) {
+                while (parts.isEmpty() && !masterDone)
+                    wait();
+                if (parts.isEmpty())
+                    return;
+                job = partMessage(parts.remove(parts.size() - 1), myIbis.identifier());
+                notifyAll();
+            }
+            addResult(ida.solveJob(job, engine, null));
+        }
+    }
+
+    /**
+     * Adds the result of one or more parts to their sum. Once all parts of
+     * its messages are in, the sum goes with the other finished ones, sent to
+     * the master when the group has no part of their board left or a sum of
+     * another board or bound is finished.
+     */
+    private void addResult(MessageObject result) throws IOException {
+        List<MessageObject> sums = new ArrayList<MessageObject>();
+        synchronized (this) {
+            List<Part> done = new ArrayList<Part>();
+            for (long ticket : result.tickets) {
+                Part part = workers.work(ticket);
+                if (part != null)
+                    done.add(part);
+            }
+            if (done.size() < result.tickets.length) {
+                // some were handed out again after their worker was taken
+                // for dead, the result cannot be told apart: search the
+                // others again
+                for (long ticket : result.tickets)
+                    workers.giveBack(ticket);
+                if (!done.isEmpty()) {
+                    workers.serveWaiting();
+                    notifyAll();
+                }
+                return;
+            }
+            Sum total = done.get(0).sum;
+            for (Part part : done) {
+                if (part.sum != total)
+                    merge(total, part.sum);
+            }
+            for (long ticket : result.tickets)
+                workers.answered(ticket);
+            total.add(result);
+            total.partsLeft -= done.size();
+            if (total.partsLeft > 0)
+                return;
+            if (finished != null && !finished.results.matches(total.results)) {
+                sums.add(finished.result(masterReplies.identifier()));
+                finished = null;
+            }
+            if (finished == null)
+                finished = total;
+            else
+                finished.merge(total);
+            // the master may wait for this before it has more to hand out,
+            // and the time of the board ends with it
+            if (!hasParts(done.get(0).boardId)) {
+                sums.add(finished.result(masterReplies.identifier()));
+                finished = null;
+            }
+        }
+        for (MessageObject sum : sums)
+            Ida.send(masterPort, sum);
+    }
+
+    /**
+     * Returns whether a part of the given board is still to hand out or not
+     * answered yet. Should be called with the lock of this sub-master held.
+     */
+    private boolean hasParts(int boardId) {
+        for (Part part : parts) {
+            if (part.boardId == boardId)
+                return true;
+        }
+        for (Part part : workers.unanswered()) {
+            if (part.boardId == boardId)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Merges another sum into the given one, for the parts of both. Should be
+     * called with the lock of this sub-master held.
+     */
+    private void merge(Sum sum, Sum other) {
+        sum.merge(other);
+        for (Part part : parts) {
+            if (part.sum == other)
+                part.sum = sum;
+        }
+        for (Part part : workers.unanswered()) {
+            if (part.sum == other)
+                part.sum = sum;
+        }
+    }
+
+    public void upcall(ReadMessage message) throws IOException, ClassNotFoundException {
+        MessageObject request = (MessageObject) message.readObject();
+        message.finish();
+        ReceivePortIdentifier requestor = request.requestor;
+        if (requestor == null)
+            return;
+        if (request.messageType == MessageObject.message_id.SOLUTIONS_NUM) {
+            addResult(request);
+            return;
+        }
+        if (request.results != null)
+            addResult(request.results);
+        synchronized (this) {
+            if (request.messageType == MessageObject.message_id.JOB_STEALING) {
+                workers.request(requestor, (Integer) request.data);
+            } else if (request.messageType == MessageObject.message_id.JOB_RETURN) {
+                // a leaving worker hands back the parts it did not start
+                for (long ticket : (long[]) request.data)
+                    workers.giveBack(ticket);
+                workers.serveWaiting();
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * A worker of the group left or died: its parts go to the others.
+     */
+    synchronized void workerGone(IbisIdentifier worker) {
+        workers.forget(worker);
+        workers.serveWaiting();
+        notifyAll();
+    }
+}
@@ -0,0 +1,295 @@
+package ida.ipl;
+
+import ibis.ipl.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The worker nodes served by the master or by a sub-master, and the work
+ * handed out to them. Every worker gets a reply port, kept open for the
+ * whole run. Workers asking for work while there is none wait for it, and
+ * workers told there is no more work are kept until they leave the pool.
+ * Work handed out and not answered yet is kept by ticket, to hand it out
+ * again if its worker goes. Where the work comes from and goes back to is
+ * up to the owner. All methods should be called with the lock of the owner
+ * held.
+ */
+abstract class Workers<T> {
+
+    /**
+     * Work handed out in one message and not answered yet
+     */
+    private static final class Handout<T> {
+        final IbisIdentifier worker;
+        final T work;
+
+        Handout(IbisIdentifier worker, T work) {
+            this.worker = worker;
+            this.work = work;
+        }
+    }
+
+    private final Ibis myIbis;
+    private final PortType replyPortType;
+
+    // reply ports are kept open for the whole run, one per worker
+    private final Map<ReceivePortIdentifier, SendPort> replyPorts = new HashMap<ReceivePortIdentifier, SendPort>();
+    // workers asking for work while there is none
+    private final List<ReceivePortIdentifier> waiting = new ArrayList<ReceivePortIdentifier>();
+    // workers told there is no more work, until they leave the pool
+    private final Set<ReceivePortIdentifier> finished = new HashSet<ReceivePortIdentifier>();
+    // search threads of each worker node, as told in its job requests
+    private final Map<ReceivePortIdentifier, Integer> threads = new HashMap<ReceivePortIdentifier, Integer>();
+    // work handed out, by ticket
+    private final Map<Long, Handout<T>> handedOut = new HashMap<Long, Handout<T>>();
+    private long nextTicket = 0;
+
+    Workers(Ibis myIbis, PortType replyPortType) {
+        this.myIbis = myIbis;
+        this.replyPortType = replyPortType;
+    }
+
+    /**
+     * Returns whether there is work to hand out.
+     */
+    abstract boolean hasWork();
+
+    /**
+     * Returns whether there will be no more work to hand out.
+     */
+    abstract boolean noMoreWork();
+
+    /**
+     * Removes the next work to hand out, and returns the message handing it
+     * out to the given worker, with the ticket of handOut().
+     */
+    abstract MessageObject nextWork(IbisIdentifier worker);
+
+    /**
+     * Puts work to search again at the front of the work to hand out.
+     */
+    abstract void putBack(T work);
+
+    /**
+     * Returns the number of workers served so far, and not gone.
+     */
+    int size() {
+        return replyPorts.size();
+    }
+
+    /**
+     * Returns the search threads of all workers.
+     */
+    int threads() {
+        int result = 0;
+        for (int n : threads.values())
+            result += n;
+        return result;
+    }
+
+    /**
+     * Keeps work handed out to the given worker until it is answered, and
+     * returns its ticket.
+     */
+    long handOut(T work, IbisIdentifier worker) {
+        long ticket = nextTicket++;
+        handedOut.put(ticket, new Handout<T>(worker, work));
+        return ticket;
+    }
+
+    /**
+     * Returns the work handed out with the given ticket, null if it is not
+     * handed out (any more).
+     */
+    T work(long ticket) {
+        Handout<T> handout = handedOut.get(ticket);
+        return handout == null ? null : handout.work;
+    }
+
+    /**
+     * Forgets the work handed out with the given ticket, as it is answered,
+     * and returns it, null if it was not handed out (any more).
+     */
+    T answered(long ticket) {
+        Handout<T> handout = handedOut.remove(ticket);
+        return handout == null ? null : handout.work;
+    }
+
+    /**
+     * Puts the work handed out with the given ticket back, to hand it out
+     * again, and returns whether it was handed out.
+     */
+    boolean giveBack(long ticket) {
+        T work = answered(ticket);
+        if (work == null)
+            return false;
+        putBack(work);
+        return true;
+    }
+
+    /**
+     * Returns all work handed out and not answered yet.
+     */
+    List<T> unanswered() {
+        List<T> result = new ArrayList<T>(handedOut.size());
+        for (Handout<T> handout : handedOut.values())
+            result.add(handout.work);
+        return result;
+    }
+
+    /**
+     * Answers a job request: with work, or later if there is none yet, or
+     * with a TERMINATE message once there will be no more. Threads are the
+     * search threads of the worker, null if the request does not tell.
+     */
+    void request(ReceivePortIdentifier requestor, Integer workerThreads) {
+        if (workerThreads != null)
+            threads.put(requestor, workerThreads);
+        if (hasWork()) {
+            send(requestor);
+        } else if (!noMoreWork()) {
+            waiting.add(requestor);
+        } else if (!finished.contains(requestor)) {
+            // a worker that joined late, or asked while being told
+            terminate(requestor);
+        }
+    }
+
+    /**
+     * Answers the workers that asked for work while there was none, either
+     * with work or with a TERMINATE message once there will be no more.
+     */
+    void serveWaiting() {
+        while (waiting.size() > 0) {
+            if (hasWork()) {
+                send(waiting.remove(0));
+            } else if (noMoreWork()) {
+                terminate(waiting.remove(0));
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells all workers not told yet that there is no more work. Once all
+     * work is answered, every worker waits for a reply to its last request,
+     * or will as soon as that request arrives.
+     */
+    void terminateAll() {
+        Set<ReceivePortIdentifier> workers = new HashSet<ReceivePortIdentifier>(replyPorts.keySet());
+        workers.addAll(waiting);
+        waiting.clear();
+        for (ReceivePortIdentifier worker : workers) {
+            if (!finished.contains(worker))
+                terminate(worker);
+        }
+    }
+
+    /**
+     * Waits up to Ida.TERMINATION_TIMEOUT milliseconds for the workers told
+     * there is no more work to leave the pool, so the owner ends last,
+     * without connections breaking off. Lock is the lock of the owner, which
+     * is notified when a worker goes.
+     */
+    void awaitLeaving(Object lock) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + Ida.TERMINATION_TIMEOUT;
+        long left;
+        while (!finished.isEmpty() && (left = deadline - System.currentTimeMillis()) > 0)
+            lock.wait(left);
+        if (!finished.isEmpty())
+            System.err.println(finished.size() + " workers did not leave the pool in time");
+    }
+
+    /**
+     * Puts the work the given worker did not answer yet back, and forgets
+     * about the worker, as it left or died.
+     */
+    void forget(IbisIdentifier worker) {
+        int jobs = 0;
+        Iterator<Handout<T>> handouts = handedOut.values().iterator();
+        while (handouts.hasNext()) {
+            Handout<T> handout = handouts.next();
+            if (handout.worker.equals(worker)) {
+                putBack(handout.work);
+                handouts.remove();
+                jobs++;
+            }
+        }
+        if (jobs > 0)
+            System.err.println("handing out " + jobs + " job messages of " + worker + " again");
+
+        Iterator<ReceivePortIdentifier> ports = replyPorts.keySet().iterator();
+        while (ports.hasNext()) {
+            ReceivePortIdentifier port = ports.next();
+            if (port.ibisIdentifier().equals(worker)) {
+                try {
+                    replyPorts.get(port).close();
+                } catch (IOException e) {
+                    // it is gone anyway
+                }
+                ports.remove();
+            }
+        }
+        remove(threads.keySet(), worker);
+        remove(finished, worker);
+        remove(waiting, worker);
+    }
+
+    private static void remove(Iterable<ReceivePortIdentifier> ports, IbisIdentifier worker) {
+        Iterator<ReceivePortIdentifier> iterator = ports.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().ibisIdentifier().equals(worker))
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Hands the next work to the given worker.
+     */
+    private void send(ReceivePortIdentifier requestor) {
+        MessageObject work = nextWork(requestor.ibisIdentifier());
+        try {
+            reply(requestor, work);
+        } catch (IOException e) {
+            System.err.println("could not send a job to " + requestor.ibisIdentifier() + ": " + e);
+            forget(requestor.ibisIdentifier());
+        }
+    }
+
+    /**
+     * Tells a worker there is no more work, and closes its reply port, as
+     * the worker cannot close its end before.
+     */
+    private void terminate(ReceivePortIdentifier worker) {
+        MessageObject terminate = new MessageObject();
+        terminate.messageType = MessageObject.message_id.TERMINATE;
+        try {
+            reply(worker, terminate);
+            replyPorts.remove(worker).close();
+            finished.add(worker);
+        } catch (IOException e) {
+            // it will not need telling any more
+            forget(worker.ibisIdentifier());
+        }
+    }
+
+    private void reply(ReceivePortIdentifier requestor, MessageObject response) throws IOException {
+        SendPort replyPort = replyPorts.get(requestor);
+        if (replyPort == null) {
+            replyPort = myIbis.createSendPort(replyPortType);
+            replyPort.connect(requestor);
+            replyPorts.put(requestor, replyPort);
+        }
+        WriteMessage reply = replyPort.newMessage();
+        reply.writeObject(response);
+        reply.finish();
+    }
+}
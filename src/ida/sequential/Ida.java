@@ -1,90 +1,104 @@
 package ida.sequential;
 
-final class Ida {
-
-	/**
-	 * expands this board into all possible positions, and returns the number of
-	 * solutions. Will cut off at the bound set in the board.
-	 */
-	private static int solutions(Board board, BoardCache cache) {
-		if (board.distance() == 0) {
-			return 1;
-		}
+import ida.core.Board;
+import ida.core.BoardReader;
+import ida.core.Engine;
+import ida.core.EngineOptions;
+import ida.core.Engines;
+import ida.core.Progress;
+import ida.core.Search;
 
-		if (board.distance() > board.bound()) {
-			return 0;
-		}
+import java.util.ArrayList;
+import java.util.List;
 
-		Board[] children = board.makeMoves(cache);
-		int result = 0;
+final class Ida {
 
-		for (int i = 0; i < children.length; i++) {
-			if (children[i] != null) {
-				result += solutions(children[i], cache);
-			}
+	private static void printPaths(List<byte[]> paths) {
+		for (byte[] path : paths) {
+			System.out.println("solution: "
+					+ Board.pathToString(path, path.length));
 		}
-		cache.put(children);
-		return result;
 	}
 
 	/**
-	 * expands this board into all possible positions, and returns the number of
-	 * solutions. Will cut off at the bound set in the board.
+	 * Returns the report of the progress on board n of a run, null if the
+	 * progress format given is null.
 	 */
-	private static int solutions(Board board) {
-		if (board.distance() == 0) {
-			return 1;
+	private static Progress report(String format, int n) {
+		if (format == null) {
+			return null;
 		}
+		return new Progress(System.err, format.equals(Progress.JSON), n);
+	}
 
-		if (board.distance() > board.bound()) {
-			return 0;
+	private static void solve(Board board, Engine engine, boolean usePaths,
+			String progress) {
+		List<byte[]> paths = null;
+		if (usePaths) {
+			paths = new ArrayList<byte[]>();
 		}
 
-		Board[] children = board.makeMoves();
-		int result = 0;
+		long solutions = Search.solve(engine, board, Integer.MAX_VALUE, paths,
+				System.out, report(progress, 1));
 
-		for (int i = 0; i < children.length; i++) {
-			if (children[i] != null) {
-				result += solutions(children[i]);
-			}
+		System.out.println("\nresult is " + solutions + " solutions of "
+				+ board.bound() + " steps");
+
+		if (usePaths) {
+			printPaths(paths);
 		}
-		return result;
 	}
 
-	private static void solve(Board board, boolean useCache) {
-		BoardCache cache = null;
-		if (useCache) {
-			cache = new BoardCache();
+	/**
+	 * Solves all boards read from the given file ("-" for standard input, see
+	 * BoardReader for the formats) one after the other, printing one result
+	 * line per board. The engine, and with it any caches and threads, is
+	 * shared by all boards. The progress on every board is reported in the
+	 * given format, unless it is null.
+	 */
+	private static void solveBatch(String fileName, int width, int height,
+			Engine engine, boolean usePaths, String progress) throws Exception {
+		List<byte[]> paths = null;
+		if (usePaths) {
+			paths = new ArrayList<byte[]>();
 		}
-		int bound = board.distance();
-		int solutions;
 
-		System.out.print("Try bound ");
-		System.out.flush();
-
-		do {
-			board.setBound(bound);
-
-			System.out.print(bound + " ");
-			System.out.flush();
-
-			if (useCache) {
-				solutions = solutions(board, cache);
-			} else {
-				solutions = solutions(board);
+		BoardReader reader = new BoardReader(fileName, width, height);
+
+		try {
+			int n = 0;
+			Board board;
+			while ((board = reader.next()) != null) {
+				n++;
+
+				long start = System.currentTimeMillis();
+				long solutions = Search.solve(engine, board, Integer.MAX_VALUE,
+						paths, null, report(progress, n));
+				long end = System.currentTimeMillis();
+
+				System.out.println("board " + n + ": " + solutions
+						+ " solutions of " + board.bound() + " steps");
+				if (usePaths) {
+					printPaths(paths);
+					paths.clear();
+				}
+				System.err.println("board " + n + " took " + (end - start)
+						+ " milliseconds");
 			}
-
-			bound += 2;
-		} while (solutions == 0);
-
-		System.out.println("\nresult is " + solutions + " solutions of "
-				+ board.bound() + " steps");
-
+		} finally {
+			reader.close();
+		}
 	}
 
 	public static void main(String[] args) {
 		String fileName = null;
-		boolean cache = true;
+		String batchFileName = null;
+		boolean paths = false;
+		String engineName = Engines.RECURSIVE;
+		EngineOptions options = new EngineOptions();
+		String progress = null;
+		int width = Board.NSQRT;
+		int height = Board.NSQRT;
 
 		/* Use suitable default value. */
 		int length = 103;
@@ -92,24 +106,83 @@ final class Ida {
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].equals("--file")) {
 				fileName = args[++i];
+			} else if (args[i].equals("--batch")) {
+				batchFileName = args[++i];
 			} else if (args[i].equals("--nocache")) {
-				cache = false;
+				options.useCache = false;
+			} else if (args[i].equals("--paths")) {
+				paths = true;
+			} else if (args[i].equals("--engine")) {
+				engineName = args[++i];
+			} else if (args[i].equals("--size")) {
+				int[] size = null;
+				try {
+					size = BoardReader.parseSize(args[++i]);
+				} catch (IllegalArgumentException e) {
+					System.err.println(e.getMessage());
+					System.exit(1);
+				}
+				width = size[0];
+				height = size[1];
+			} else if (args[i].equals("--threads")) {
+				i++;
+				options.threads = Integer.parseInt(args[i]);
 			} else if (args[i].equals("--length")) {
 				i++;
 				length = Integer.parseInt(args[i]);
+			} else if (args[i].equals("--perimeter-depth")) {
+				i++;
+				options.perimeterDepth = Integer.parseInt(args[i]);
+			} else if (args[i].equals("--perimeter-memory")) {
+				i++;
+				options.perimeterMemory = Integer.parseInt(args[i]);
+			} else if (args[i].equals("--layer-memory")) {
+				i++;
+				options.layerMemory = Integer.parseInt(args[i]);
+			} else if (args[i].equals("--spill-dir")) {
+				options.spillDirectory = args[++i];
+			} else if (args[i].equals("--progress")) {
+				progress = args[++i];
+				if (!Progress.isFormat(progress)) {
+					System.err.println("No such progress format: " + progress);
+					System.exit(1);
+				}
 			} else {
 				System.err.println("No such option: " + args[i]);
 				System.exit(1);
 			}
 		}
 
+		Engine engine = null;
+		try {
+			engine = Engines.create(engineName, options);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+
+		if (batchFileName != null) {
+			long start = System.currentTimeMillis();
+			try {
+				solveBatch(batchFileName, width, height, engine, paths,
+						progress);
+			} catch (Exception e) {
+				System.err.println("could not read boards from file: " + e);
+				System.exit(1);
+			}
+			long end = System.currentTimeMillis();
+
+			System.err.println("ida took " + (end - start) + " milliseconds");
+			return;
+		}
+
 		Board initialBoard = null;
 
 		if (fileName == null) {
-			initialBoard = new Board(length);
+			initialBoard = new Board(width, height, length);
 		} else {
 			try {
-				initialBoard = new Board(fileName);
+				initialBoard = new Board(fileName, width, height);
 			} catch (Exception e) {
 				System.err
 						.println("could not initialize board from file: " + e);
@@ -120,7 +193,7 @@ final class Ida {
 		System.out.println(initialBoard);
 
 		long start = System.currentTimeMillis();
-		solve(initialBoard, cache);
+		solve(initialBoard, engine, paths, progress);
 		long end = System.currentTimeMillis();
 
 		// NOTE: this is printed to standard error! The rest of the output